@@ -0,0 +1,32 @@
+package mini_expr_compiler.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the gc profiler enabled, so every result comes with
+ * gc.alloc.rate.norm (bytes allocated per operation) next to the throughput.
+ *
+ * Accepts the usual JMH command line, e.g.
+ *   java ... mini_expr_compiler.bench.BenchmarkMain PhaseBenchmark.parse -p shape=DEEP_NESTED
+ * Without a pattern all benchmarks in this package are run.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include("mini_expr_compiler\\.bench\\..*");
+        }
+        Options options = builder
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,69 @@
+package mini_expr_compiler.bench;
+
+import mini_expr_compiler.ast.Expr;
+import mini_expr_compiler.eval.*;
+import mini_expr_compiler.lexer1.*;
+import mini_expr_compiler.parser.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of each compiler phase on its own: Lexer.tokenize, Parser.parse and Evaluator.evaluate.
+ * AstPrinter.print is in PrintBenchmark, since its output grows much faster than the input.
+ *
+ * Every phase gets its input prepared in setup (source text, token list, AST), so a benchmark only
+ * measures its own phase. The shape x size grid turns into one curve per phase and shape; run it
+ * with the gc profiler (see BenchmarkMain) to also get gc.alloc.rate.norm, the bytes allocated
+ * per operation.
+ *
+ * The recursive Parser and Evaluator need a large thread stack for DEEP_NESTED at the
+ * bigger sizes, hence -Xss.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss256m")
+@State(Scope.Benchmark)
+public class PhaseBenchmark {
+
+    @Param({ "SHORT", "FLAT_CHAIN", "DEEP_NESTED", "BALANCED" })
+    public Workload.Shape shape;
+
+    /** number of literals in the expression */
+    @Param({ "10", "100", "1000", "10000" })
+    public int size;
+
+    @Param("42")
+    public long seed;
+
+    private String source;
+    private List<Token> tokens;
+    private Expr ast;
+    private final Evaluator evaluator = new Evaluator();
+
+    @Setup(Level.Trial)
+    public void setUp() throws ParseException {
+        source = new Workload(seed).generate(shape, size);
+        tokens = new Lexer(source).tokenize();
+        ast = new Parser(tokens).parse();
+    }
+
+    @Benchmark
+    public List<Token> lex() {
+        return new Lexer(source).tokenize();
+    }
+
+    @Benchmark
+    public Expr parse() throws ParseException {
+        return new Parser(tokens).parse();
+    }
+
+    @Benchmark
+    public int evaluate() {
+        return evaluator.evaluate(ast);
+    }
+}
@@ -0,0 +1,49 @@
+package mini_expr_compiler.bench;
+
+import mini_expr_compiler.ast.*;
+import mini_expr_compiler.lexer1.*;
+import mini_expr_compiler.parser.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of AstPrinter.print on the same workloads as PhaseBenchmark.
+ *
+ * The ASCII tree is as wide as the tree and as tall as it is deep, so for chains and nested
+ * parentheses the output grows with the square of the input (about 8M characters for
+ * DEEP_NESTED at size 1000). The sweep therefore stops at 1000; pass -p size=... to go further.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss256m")
+@State(Scope.Benchmark)
+public class PrintBenchmark {
+
+    @Param({ "SHORT", "FLAT_CHAIN", "DEEP_NESTED", "BALANCED" })
+    public Workload.Shape shape;
+
+    /** number of literals in the expression */
+    @Param({ "10", "100", "1000" })
+    public int size;
+
+    @Param("42")
+    public long seed;
+
+    private Expr ast;
+    private final AstPrinter printer = new AstPrinter();
+
+    @Setup(Level.Trial)
+    public void setUp() throws ParseException {
+        String source = new Workload(seed).generate(shape, size);
+        ast = new Parser(new Lexer(source).tokenize()).parse();
+    }
+
+    @Benchmark
+    public String print() {
+        return printer.print(ast);
+    }
+}
@@ -0,0 +1,108 @@
+package mini_expr_compiler.bench;
+
+import java.util.Random;
+
+/**
+ * Seeded generator of benchmark expressions. The same shape, size and seed always give the same text,
+ * so results from different runs (and different commits) are comparable.
+ *
+ * size is the number of number literals in the expression. Only literals 1..9 are used and '/' only
+ * ever has a literal on its right, so generated expressions never divide by zero.
+ */
+public final class Workload {
+
+    public enum Shape {
+        /** random mix of operators, parentheses and unary minus, like hand-written formulas */
+        SHORT,
+        /** 1 + 2 * 3 - 4 / 5 ... with no parentheses */
+        FLAT_CHAIN,
+        /** ((((1 + 2) * 3) - 4) ...), nesting depth equal to size */
+        DEEP_NESTED,
+        /** balanced binary tree: ((1 + 2) * (3 - 4)) ..., depth log2(size) */
+        BALANCED
+    }
+
+    private static final char[] OPERATORS = { '+', '-', '*', '/' };
+
+    private final Random random;
+
+    public Workload(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public String generate(Shape shape, int size) {
+        StringBuilder sb = new StringBuilder(size * 6);
+        switch (shape) {
+            case SHORT:
+                mixed(sb, size);
+                break;
+            case FLAT_CHAIN:
+                literal(sb);
+                for (int i = 1; i < size; i++) {
+                    sb.append(' ').append(OPERATORS[random.nextInt(4)]).append(' ');
+                    literal(sb);
+                }
+                break;
+            case DEEP_NESTED:
+                for (int i = 1; i < size; i++) {
+                    sb.append('(');
+                }
+                literal(sb);
+                for (int i = 1; i < size; i++) {
+                    sb.append(' ').append(OPERATORS[random.nextInt(4)]).append(' ');
+                    literal(sb);
+                    sb.append(')');
+                }
+                break;
+            case BALANCED:
+                balanced(sb, size);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Random tree with 'leaves' literals
+     */
+    private void mixed(StringBuilder sb, int leaves) {
+        if (leaves == 1) {
+            if (random.nextInt(6) == 0) {
+                sb.append('-');
+            }
+            literal(sb);
+            return;
+        }
+        boolean parens = random.nextInt(3) == 0;
+        if (parens) {
+            sb.append(random.nextInt(5) == 0 ? "-(" : "(");
+        }
+        int left = 1 + random.nextInt(leaves - 1);
+        mixed(sb, left);
+        // Division only with a literal on the right, so the divisor is never 0
+        char op = OPERATORS[random.nextInt(leaves - left == 1 ? 4 : 3)];
+        sb.append(' ').append(op).append(' ');
+        mixed(sb, leaves - left);
+        if (parens) {
+            sb.append(')');
+        }
+    }
+
+    private void balanced(StringBuilder sb, int leaves) {
+        if (leaves == 1) {
+            literal(sb);
+            return;
+        }
+        int left = leaves / 2;
+        sb.append('(');
+        balanced(sb, left);
+        sb.append(' ').append(OPERATORS[random.nextInt(leaves - left == 1 ? 4 : 3)]).append(' ');
+        balanced(sb, leaves - left);
+        sb.append(')');
+    }
+
+    private void literal(StringBuilder sb) {
+        sb.append((char) ('1' + random.nextInt(9)));
+    }
+}
@@ -4,7 +4,20 @@ import mini_expr_compiler.ast.*;
 import mini_expr_compiler.eval.*;
 import mini_expr_compiler.parser.*;
 import mini_expr_compiler.lexer1.*;
+import mini_expr_compiler.batch.*;
+import mini_expr_compiler.repl.*;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Scanner;
 import java.text.ParseException;
 import java.util.List;
@@ -12,6 +25,34 @@ import java.util.List;
 public class Main {
     public static void main(String[] args) {
 
+        // Batch mode: java Main --batch [file]   (reads stdin when no file is given)
+        if (args.length > 0 && args[0].equals("--batch")) {
+            runBatch(args.length > 1 ? args[1] : null);
+            return;
+        }
+
+        // Parallel batch mode over a memory-mapped file: java Main --parallel <file>
+        if (args.length > 0 && args[0].equals("--parallel")) {
+            if (args.length < 2) {
+                System.err.println("Usage: java mini_expr_compiler.Main --parallel <file>");
+                System.exit(2);
+            }
+            runParallel(args[1]);
+            return;
+        }
+
+        // Syntax check reporting every error in one pass: java Main --check [file]
+        if (args.length > 0 && args[0].equals("--check")) {
+            runCheck(args.length > 1 ? args[1] : null);
+            return;
+        }
+
+        // Interactive session that keeps the JVM warm between inputs: java Main --repl
+        if (args.length > 0 && args[0].equals("--repl")) {
+            runRepl();
+            return;
+        }
+
         Scanner scanby = new Scanner(System.in);
         System.out.println("Enter an expression: ");
         String input = scanby.nextLine();
@@ -76,4 +117,81 @@ public class Main {
         System.out.println("================================================");
         scanby.close();
     }
-}
\ No newline at end of file
+
+    /**
+     * Evaluates one expression per line from a file or stdin, printing only result / error lines.
+     * A summary goes to stderr so it does not mix with the results.
+     */
+    private static void runBatch(String file) {
+        BatchRunner runner = new BatchRunner();
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        try (Reader in = file != null
+                    ? Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)
+                    : new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)) {
+            try {
+                runner.run(in, out);
+            } finally {
+                out.flush();    // keep the results written so far even if the run fails
+            }
+        } catch (IOException e) {
+            System.err.println("Batch Error: " + e.getMessage());
+            System.exit(1);
+        }
+        System.err.println("Processed " + runner.getLineCount() + " lines, " + runner.getErrorCount() + " errors");
+    }
+
+    /**
+     * Parses one expression from a file or stdin with error recovery and prints every diagnostic.
+     * Exits with status 1 if there were any.
+     */
+    private static void runCheck(String file) {
+        ParseResult result;
+        try (Reader in = file != null
+                    ? Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)
+                    : new InputStreamReader(System.in, StandardCharsets.UTF_8)) {
+            result = IterativeParser.parseRecovering(in);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Check Error: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        for (Diagnostic d : result.getDiagnostics()) {
+            System.out.println(d);
+        }
+        System.err.println(result.getDiagnostics().size() + " errors");
+        if (result.hasErrors()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads expressions until :quit or end of input, see Repl for the commands
+     */
+    private static void runRepl() {
+        try {
+            new Repl(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), System.out).run();
+        } catch (IOException e) {
+            System.err.println("REPL Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Same output as batch mode, but the file is memory-mapped and evaluated on all cores
+     */
+    private static void runParallel(String file) {
+        MappedBatchRunner runner = new MappedBatchRunner();
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII), 1 << 16);
+        try {
+            try {
+                runner.run(Paths.get(file), out);
+            } finally {
+                out.flush();    // keep the results written so far even if the run fails
+            }
+        } catch (IOException e) {
+            System.err.println("Batch Error: " + e.getMessage());
+            System.exit(1);
+        }
+        System.err.println("Processed " + runner.getLineCount() + " lines, " + runner.getErrorCount() + " errors");
+    }
+}
@@ -0,0 +1,172 @@
+package mini_expr_compiler.ast;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An alternative AST representation that stores nodes in parallel int arrays instead of objects.
+ *
+ * A node is just an index. For node i:
+ * - op(i)     what kind of node it is (NUMBER, VARIABLE, NEGATE, ADD, SUB, MUL, DIV)
+ * - left(i)   index of the left child (the operand for NEGATE), -1 for leaves
+ * - right(i)  index of the right child, -1 for leaves and NEGATE
+ * - value(i)  the literal for NUMBER, the name index for VARIABLE (see name(i))
+ *
+ * Compared to the object graph (BinaryExpr -> Token -> String, NumberExpr, ...) a node costs
+ * 16 bytes in four arrays, there are no object headers or pointers for the GC to trace, and
+ * nodes built together sit next to each other in memory.
+ *
+ * Children are always added before their parent. ArenaParser builds each expression in
+ * post-order (left subtree, right subtree, node), so the nodes of one expression occupy the
+ * contiguous range [subtreeStart(root), root], which ArenaEvaluator evaluates with a single
+ * loop and no stack.
+ *
+ * The arrays only grow; clear() makes the arena reusable for the next expression.
+ */
+public final class AstArena {
+
+    public static final int NUMBER = 0;
+    public static final int VARIABLE = 1;
+    public static final int NEGATE = 2;
+    public static final int ADD = 3;
+    public static final int SUB = 4;
+    public static final int MUL = 5;
+    public static final int DIV = 6;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] ops = new int[INITIAL_CAPACITY];
+    private int[] lefts = new int[INITIAL_CAPACITY];
+    private int[] rights = new int[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // Variable names are stored once each and referenced by index from value(i)
+    private String[] names = new String[8];
+    private final Map<String, Integer> nameIndexes = new HashMap<>();
+
+    public int number(int value) {
+        return add(NUMBER, -1, -1, value);
+    }
+
+    public int variable(String name) {
+        Integer index = nameIndexes.get(name);
+        if (index == null) {
+            index = nameIndexes.size();
+            if (index == names.length) {
+                names = Arrays.copyOf(names, index * 2);
+            }
+            names[index] = name;
+            nameIndexes.put(name, index);
+        }
+        return add(VARIABLE, -1, -1, index);
+    }
+
+    public int negate(int operand) {
+        checkChild(operand);
+        return add(NEGATE, operand, -1, 0);
+    }
+
+    /**
+     * @param op  one of ADD, SUB, MUL, DIV
+     */
+    public int binary(int op, int left, int right) {
+        if (op < ADD || op > DIV) {
+            throw new IllegalArgumentException("Not a binary operator: " + op);
+        }
+        checkChild(left);
+        checkChild(right);
+        return add(op, left, right, 0);
+    }
+
+    /**
+     * @return number of nodes in the arena
+     */
+    public int size() {
+        return size;
+    }
+
+    public int op(int node) {
+        return ops[node];
+    }
+
+    public int left(int node) {
+        return lefts[node];
+    }
+
+    public int right(int node) {
+        return rights[node];
+    }
+
+    public int value(int node) {
+        return values[node];
+    }
+
+    /**
+     * @return the name of a VARIABLE node
+     */
+    public String name(int node) {
+        return names[values[node]];
+    }
+
+    /**
+     * @return the first node of the subtree rooted at node. Since every node is added after its
+     *         children, left subtree first, this is the subtree's leftmost leaf.
+     */
+    public int subtreeStart(int node) {
+        while (lefts[node] >= 0) {
+            node = lefts[node];
+        }
+        return node;
+    }
+
+    /**
+     * @return the symbol for an operator node ("+", "-", "*", "/"; "-" for NEGATE)
+     */
+    public static String symbol(int op) {
+        switch (op) {
+            case NEGATE:
+            case SUB:
+                return "-";
+            case ADD:
+                return "+";
+            case MUL:
+                return "*";
+            case DIV:
+                return "/";
+            default:
+                throw new IllegalArgumentException("Not an operator: " + op);
+        }
+    }
+
+    /**
+     * Removes all nodes, keeping the allocated arrays
+     */
+    public void clear() {
+        size = 0;
+        Arrays.fill(names, 0, nameIndexes.size(), null);
+        nameIndexes.clear();
+    }
+
+    private void checkChild(int child) {
+        if (child < 0 || child >= size) {
+            throw new IllegalArgumentException("No such node: " + child);
+        }
+    }
+
+    private int add(int op, int left, int right, int value) {
+        if (size == ops.length) {
+            int capacity = size * 2;
+            ops = Arrays.copyOf(ops, capacity);
+            lefts = Arrays.copyOf(lefts, capacity);
+            rights = Arrays.copyOf(rights, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        ops[size] = op;
+        lefts[size] = left;
+        rights[size] = right;
+        values[size] = value;
+        return size++;
+    }
+}
@@ -1,176 +1,91 @@
 package mini_expr_compiler.ast;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * Responsible for turning an Expr tree into a readable AST tree
  * Does not modify the Expr tree, it only traverses the tree and formats it
  * 
- * Class recursively "builds" each subtree into an array of strings
- * For binary nodes, horizontally merge the left and right subtrees
- * Places the operator and branch connectors ("/" "\\") above them working upward. 
+ * Each subtree is drawn as a block: for binary nodes the left and right subtrees sit side by side,
+ * with the operator and branch connectors ("/" "\\") above them.
+ *
+ * The layout is done by TreeLayout, which measures every block once and streams the rows, so the
+ * time is linear in the size of the output and no per-level copies of the lines are made.
+ * The print methods taking an Appendable write straight to it (a Writer, PrintStream or
+ * StringBuilder); the ones taking maxDepth cut the tree off below that depth and show "..."
+ * instead, which keeps the output small for huge trees.
  */
 public class AstPrinter {
-    
+
     /**
      * public print method, called by Main
-     * @param expr
-     * @return
+     * @param expr  root of the tree, may be null
+     * @return the tree, one line per row, each ending with '\n'
      */
     public String print(Expr expr) {
+        return print(expr, -1);
+    }
+
+    /**
+     * Prints only the top levels of the tree
+     * @param expr      root of the tree, may be null
+     * @param maxDepth  number of operator levels to show, deeper subtrees are printed as "...";
+     *                  -1 for the whole tree
+     */
+    public String print(Expr expr, int maxDepth) {
         if (expr == null) {
             return ""; // empty expressions print as empty rather than throwing a NullPointerException
         }
         StringBuilder sb = new StringBuilder();
-        String[] lines = build(expr);   //Build the tree layout as an array of lines
-
-        // Join the individual lines into one string using newline seperation
-        for (String line : lines) {
-            sb.append(line).append("\n");
+        try {
+            print(expr, sb, maxDepth);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // StringBuilder does not throw
         }
         return sb.toString();
     }
 
     /**
-     * Recursively builds a AST representation of the input expression 
-     * @param expr  Expr subtree is turned into an array of strings
-     * 
-     * @return
+     * Writes the tree to out
+     * @param expr  root of the tree, may be null
      */
-    private String[] build(Expr expr) {
-        
-        // Handle leaf nodes (numbers)
-        // Base case: a number has no children, so print normal value
-        if (expr instanceof NumberExpr) {
-            String s = String.valueOf(((NumberExpr) expr).getValue());
-            return new String[]{ s };
-        }
-
-        // Unary nodes
-        // If it's a unary minus applied to a number, just display it as the negative number itself
-        if (expr instanceof UnaryExpr) {
-            UnaryExpr u = (UnaryExpr) expr;
-            
-            // unary minus on a number - display as negative number
-            if (u.getRight() instanceof NumberExpr && u.getOperator().getType().toString().equals("MINUS")) {
-                double value = ((NumberExpr) u.getRight()).getValue();
-                String negativeNum = value == (int)value ? "-" + (int)value : "-" + value;
-                return new String[] { negativeNum };
-            }
-            
-            // unary minus on a binary expression - distribute the minus
-            if (u.getRight() instanceof BinaryExpr && u.getOperator().getType().toString().equals("MINUS")) {
-                BinaryExpr binExpr = (BinaryExpr) u.getRight();
-
-                // Create new unary expressions for left and right with minus operator
-                UnaryExpr negLeft = new UnaryExpr(u.getOperator(), binExpr.getLeft());
-                UnaryExpr negRight = new UnaryExpr(u.getOperator(), binExpr.getRight());
-
-                // Create a new binary expression with the negated operands
-                BinaryExpr negatedBinExpr = new BinaryExpr(negLeft, binExpr.getOperator(), negRight);
-
-                // Build the negated expression
-                return build(negatedBinExpr);
-            }
-            
-            String op = u.getOperator().getLexeme();
-            String opDisplay = "/".equals(op) ? "÷" : op;
-
-            // Recursively build the right subtree
-            String[] child = build(u.getRight());
-
-            // Result has one extra line: operator on top, then the child subtree
-            String[] result = new String[child.length + 1];
-            result[0] = opDisplay; // operator at the root line
-
-            // Indent every line of the child by one space so its right under the operator
-            for (int i = 0; i < child.length; i++) {
-                result[i + 1] = " " + child[i];
-            }
-            return result;
-        }
-
-        // Binary nodes
-        if (expr instanceof BinaryExpr) {
-            BinaryExpr b = (BinaryExpr) expr;
-            String op = b.getOperator().getLexeme();
-            String opDisplay = "/".equals(op) ? "÷" : op;
-
-            // Build the AST blocks for left / right subtrees
-            String[] left = build(b.getLeft());
-            String[] right = build(b.getRight());
-
-            // width(left) gives us how many characters the left subtree occupies on its widest line
-            // this is used to decide where we place the root operator and the branch connectors.
-            int leftWidth = width(left);
-
-            // Root line: pad with spaces so the operator sits roughly above the gap between L and R. "+1" is a small tuning offset
-            String root = " ".repeat(leftWidth + 1) + opDisplay;
-
-            // Connector line: spaces up to the left subtree width for proper spacing
-            String connector = " ".repeat(leftWidth) + "/ \\";   // / and \ separated by ONE space
-
-            // Merge the left and right subtrees together
-            String[] merged = merge(left, right);
-
-            // Final Block:
-            String[] lines = new String[2 + merged.length];
-            lines[0] = root;        // operator
-            lines[1] = connector;   // branch connectors
-
-            for (int i = 0; i < merged.length; i++) {
-                lines[i + 2] = merged[i];
-            }
-
-            return lines;
-        }
-
-        return new String[] {"(unknown)"};
+    public void print(Expr expr, Appendable out) throws IOException {
+        print(expr, out, -1);
     }
 
     /**
-     * Computes the max line width in a block of text. Used to understand how "wide" the given subtree is, and used to position operators and connectors.
+     * Writes the tree to out, showing only the top levels
+     * @param expr      root of the tree, may be null
+     * @param maxDepth  number of operator levels to show, deeper subtrees are printed as "...";
+     *                  -1 for the whole tree
      */
-    private int width(String[] lines) {
-        int w = 0;
-        for (String s : lines) {
-            if (s.length() > w) {
-                 w = s.length();
-            }
+    public void print(Expr expr, Appendable out, int maxDepth) throws IOException {
+        if (expr == null) {
+            return;
         }
-        return w;
+        TreeLayout.of(expr, maxDepth).write(out);
     }
 
     /**
-     * Merges the left and right subtree blocks into a single block
-     * how it works:
-     *      - iterate up to the tallest height of the two trees
-     *      - pad missing lines on the short side with spaces
-     *      - insert 3 spaces between left and right to align with / \ connectors
+     * Prints an expression stored in an AstArena, with exactly the same layout as print(Expr)
+     * @param arena  the arena holding the expression
+     * @param root   index of the root node
      */
-    private String[] merge(String[] left, String[] right) {
-        int h = Math.max(left.length, right.length);
-        String[] result = new String[h];
-
-        int leftWidth = width(left);
-        int rightWidth = width(right);
-
-        for (int i = 0; i < h; i++) {
-            // If the left subtree has a line here use it, otherwise pad with spaces to leftWidth
-            String L = i < left.length ? padRight(left[i], leftWidth) : " ".repeat(leftWidth);
-
-            // If the right subtree has a line here use it, otherwise pad with spaces to rightWidth
-            String R = i < right.length ? padRight(right[i], rightWidth) : " ".repeat(rightWidth);
-            
-            result[i] = L + "   " + R;  // 3 spaces to match connector spacing
+    public String print(AstArena arena, int root) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            print(arena, root, sb, -1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return result;
+        return sb.toString();
     }
 
     /**
-     * Pad the given string on the right with spaces up to the given width.
+     * Arena version of print(Expr, Appendable, int)
      */
-    private String padRight(String s, int width) {
-        if (s.length() >= width) return s;
-        return s + " ".repeat(width - s.length());
+    public void print(AstArena arena, int root, Appendable out, int maxDepth) throws IOException {
+        TreeLayout.of(arena, root, maxDepth).write(out);
     }
-
 }
@@ -11,6 +11,7 @@ public class BinaryExpr implements Expr {
     private final Expr left;    // left side of the binary operation
     private final Token operator; // PLUS, MINUS, STAR, SLASH
     private final Expr right;   //right side of the binary operation
+    private final int hash;     // structural hash, computed once from the children's (also cached) hashes
 
     /**
      * Constructs a new BinaryExpr node
@@ -22,6 +23,7 @@ public class BinaryExpr implements Expr {
         this.left = left;
         this.operator = operator;
         this.right = right;
+        this.hash = (left.hashCode() * 31 + operator.getType().ordinal() + 1) * 31 + right.hashCode();
     }
 
     /**
@@ -44,4 +46,29 @@ public class BinaryExpr implements Expr {
     public Expr getRight(){
         return right;
     }
+
+    /**
+     * Structural equality: same operator type and equal children.
+     * Token positions are ignored. When children are shared nodes (see InterningExprFactory)
+     * the comparison stops at the identity checks, so it is O(1).
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BinaryExpr)) {
+            return false;
+        }
+        BinaryExpr other = (BinaryExpr) o;
+        return hash == other.hash
+                && operator.getType() == other.operator.getType()
+                && left.equals(other.left)
+                && right.equals(other.right);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
 }
@@ -0,0 +1,25 @@
+package mini_expr_compiler.ast;
+
+/**
+ * AST node standing in for an operand that could not be parsed, e.g. the missing right operand
+ * of "3 + * 4". Only produced by Parser / IterativeParser.parseRecovering(), so that a partial tree can be returned
+ * together with the diagnostics. Evaluating it fails like any unknown node.
+ */
+public class ErrorExpr implements Expr {
+
+    private final int position;
+
+    /**
+     * @param position  offset in the source of the token where an operand was expected
+     */
+    public ErrorExpr(int position) {
+        this.position = position;
+    }
+
+    /**
+     * @return offset in the source of the token where an operand was expected
+     */
+    public int getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,48 @@
+package mini_expr_compiler.ast;
+
+import mini_expr_compiler.lexer1.*;
+
+import java.math.BigInteger;
+
+/**
+ * Creates AST nodes for the parser.
+ *
+ * The default methods simply construct a new node each time (ExprFactory.DEFAULT).
+ * Other factories can return existing nodes instead, e.g. InterningExprFactory
+ * shares structurally equal subtrees.
+ */
+public interface ExprFactory {
+
+    /**
+     * Factory that always creates new nodes
+     */
+    ExprFactory DEFAULT = new ExprFactory() { };
+
+    default Expr number(int value) {
+        return new NumberExpr(value);
+    }
+
+    default Expr number(BigInteger value) {
+        return new NumberExpr(value);
+    }
+
+    /**
+     * @return the literal of a NUMBER token, through number(int) unless it is too large for an int
+     */
+    default Expr number(Token token) {
+        Integer value = token.getNumericValue();
+        return value != null ? number(value.intValue()) : number(token.getBigValue());
+    }
+
+    default Expr variable(String name) {
+        return new VariableExpr(name);
+    }
+
+    default Expr unary(Token operator, Expr right) {
+        return new UnaryExpr(operator, right);
+    }
+
+    default Expr binary(Expr left, Token operator, Expr right) {
+        return new BinaryExpr(left, operator, right);
+    }
+}
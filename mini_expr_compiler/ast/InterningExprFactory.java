@@ -0,0 +1,70 @@
+package mini_expr_compiler.ast;
+
+import mini_expr_compiler.lexer1.*;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An ExprFactory that hash-conses nodes: structurally equal subtrees become one shared node,
+ * turning the parsed tree into a DAG.
+ *
+ * Example: (a+b)*(a+b) - (a+b) produces a single "a+b" node used three times.
+ *
+ * Because children are always interned before their parent, checking whether a new node
+ * already exists only compares the children by identity plus the operator, which makes
+ * equals() and hashCode() O(1) per node (see BinaryExpr / UnaryExpr).
+ * The operator token (and its position) of the first occurrence is the one that is kept.
+ *
+ * One factory can be used for many parses to share nodes between expressions as well.
+ * Not thread-safe.
+ */
+public class InterningExprFactory implements ExprFactory {
+
+    private final Map<Expr, Expr> nodes = new HashMap<>();
+
+    @Override
+    public Expr number(int value) {
+        return intern(new NumberExpr(value));
+    }
+
+    @Override
+    public Expr number(BigInteger value) {
+        return intern(new NumberExpr(value));
+    }
+
+    @Override
+    public Expr variable(String name) {
+        return intern(new VariableExpr(name));
+    }
+
+    @Override
+    public Expr unary(Token operator, Expr right) {
+        return intern(new UnaryExpr(operator, right));
+    }
+
+    @Override
+    public Expr binary(Expr left, Token operator, Expr right) {
+        return intern(new BinaryExpr(left, operator, right));
+    }
+
+    /**
+     * @return number of distinct nodes created so far
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Forgets all nodes. Trees built earlier stay valid but will not be shared with new ones.
+     */
+    public void clear() {
+        nodes.clear();
+    }
+
+    private Expr intern(Expr candidate) {
+        Expr existing = nodes.putIfAbsent(candidate, candidate);
+        return existing != null ? existing : candidate;
+    }
+}
@@ -1,11 +1,18 @@
 package mini_expr_compiler.ast;
 
+import java.math.BigInteger;
+
 /**
  * AST node representing an integer ("3","59","86")
+ *
+ * Literals of any size are kept exactly. Those that fit in an int (nearly all of them) are stored
+ * as an int; getValue() throws for the others, so the int backends report them as an error while
+ * LongEvaluator and BigIntegerEvaluator read them with getLongValue() / getBigValue().
  */
 public class NumberExpr implements Expr {
 
     private final int value;
+    private final BigInteger big;   // null if the value fits in an int
 
     /**
      * Constructs a new NumberExpr 
@@ -13,12 +20,68 @@ public class NumberExpr implements Expr {
      */
     public NumberExpr(int value){
         this.value = value;
+        this.big = null;
+    }
+
+    /**
+     * @param value  the integer value this node represents, of any size
+     */
+    public NumberExpr(BigInteger value) {
+        boolean fitsInt = value.bitLength() < Integer.SIZE;
+        this.value = fitsInt ? value.intValue() : 0;
+        this.big = fitsInt ? null : value;
     }
 
     /**
      * @return the numeric value of this number expression 
+     * @throws ArithmeticException if the value does not fit in an int
      */
     public int getValue() {
+        if (big != null) {
+            throw new ArithmeticException("Number " + big + " does not fit in int");
+        }
         return value;
     }
+
+    /**
+     * @return the numeric value of this number expression
+     * @throws ArithmeticException if the value does not fit in a long
+     */
+    public long getLongValue() {
+        if (big != null && big.bitLength() >= Long.SIZE) {
+            throw new ArithmeticException("Number " + big + " does not fit in long");
+        }
+        return big != null ? big.longValue() : value;
+    }
+
+    /**
+     * @return the numeric value of this number expression
+     */
+    public BigInteger getBigValue() {
+        return big != null ? big : BigInteger.valueOf(value);
+    }
+
+    /**
+     * @return true if getValue() can be called
+     */
+    public boolean isInt() {
+        return big == null;
+    }
+
+    /**
+     * Two number nodes are equal if they hold the same value
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof NumberExpr)) {
+            return false;
+        }
+        NumberExpr other = (NumberExpr) o;
+        return big == null ? other.big == null && other.value == value : big.equals(other.big);
+    }
+
+    @Override
+    public int hashCode() {
+        return big == null ? Integer.hashCode(value) : big.hashCode();
+    }
 }
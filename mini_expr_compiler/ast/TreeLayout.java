@@ -0,0 +1,376 @@
+package mini_expr_compiler.ast;
+
+import mini_expr_compiler.lexer1.TokenType;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Layout engine behind AstPrinter.
+ *
+ * The old printer built every subtree into a String[] block and re-padded and copied all of its
+ * lines at each level, which is quadratic in time and garbage. Here the tree is first flattened
+ * into parallel arrays of layout nodes (a label plus 0, 1 or 2 children) and the width and height
+ * of every block are computed in one pass. Rows are then written straight to an Appendable: for
+ * each row only the blocks that cross it are visited, and each of those writes at least one
+ * character, so the work is linear in the size of the output and memory is linear in the number
+ * of nodes. Neither pass recurses, so trees of any depth can be printed.
+ *
+ * Blocks look exactly like they always did:
+ *
+ *   leaf     label
+ *
+ *   unary    label             binary      (left width + 1 spaces) label
+ *             child                        (left width spaces) / \
+ *                                          left   right     (both padded to their width)
+ *
+ * A unary minus is printed the way the old printer did it, without building new nodes: it is
+ * folded into a number (-5), distributed over a binary node (-(a + b) shows as -a + -b), and
+ * printed as its own "-" node over anything else.
+ *
+ * With maxDepth >= 0, layout nodes at that depth that have children are replaced by an ELIDED leaf
+ * and the rest of their subtree is never visited, so huge trees can be previewed cheaply.
+ */
+final class TreeLayout {
+
+    /** label of a subtree cut off by maxDepth */
+    static final String ELIDED = "...";
+
+    private static final String UNKNOWN = "(unknown)";
+    private static final String ERROR = "<error>";
+    private static final String MINUS = "-";
+    private static final String CONNECTOR = "/ \\";
+    private static final String SPACES = " ".repeat(64);
+
+    private String[] labels = new String[64];
+    private int[] lefts = new int[64];      // -1 for leaves; the only child of a unary node
+    private int[] rights = new int[64];     // -1 for leaves and unary nodes
+    private int[] widths;
+    private int[] heights;
+    private int size = 0;
+
+    private TreeLayout() {
+    }
+
+    /**
+     * Lays out an Expr tree
+     * @param maxDepth  deepest layout level to show, or -1 for the whole tree
+     */
+    static TreeLayout of(Expr root, int maxDepth) {
+        TreeLayout layout = new TreeLayout();
+
+        // Pending subtrees: the expression, whether a unary minus is being pushed into it,
+        // its depth and the layout node (and side) it hangs from
+        Expr[] exprs = new Expr[16];
+        boolean[] negated = new boolean[16];
+        int[] depths = new int[16];
+        int[] parents = new int[16];    // parent * 2 + (1 for the right side), -1 for the root
+        int top = 0;
+        exprs[top] = root;
+        parents[top] = -1;
+        top++;
+
+        while (top > 0) {
+            top--;
+            Expr expr = exprs[top];
+            boolean neg = negated[top];
+            int depth = depths[top];
+            int parent = parents[top];
+            exprs[top] = null;
+
+            // A unary minus gets no layout node of its own, it is pushed into its operand
+            while (!neg && expr instanceof UnaryExpr && ((UnaryExpr) expr).getOperator().getType() == TokenType.MINUS) {
+                expr = ((UnaryExpr) expr).getRight();
+                neg = true;
+            }
+
+            if (expr instanceof NumberExpr) {
+                NumberExpr n = (NumberExpr) expr;
+                String value = n.isInt() ? String.valueOf(n.getValue()) : n.getBigValue().toString();
+                layout.add(neg ? MINUS + value : value, parent);
+                continue;
+            }
+            boolean binary = expr instanceof BinaryExpr;
+            if (!neg && !binary && !(expr instanceof UnaryExpr)) {
+                String label = expr instanceof VariableExpr ? ((VariableExpr) expr).getName()
+                        : expr instanceof ErrorExpr ? ERROR : UNKNOWN;
+                layout.add(label, parent);
+                continue;
+            }
+            if (depth == maxDepth) {
+                layout.add(ELIDED, parent);
+                continue;
+            }
+
+            if (top + 2 > exprs.length) {
+                int capacity = exprs.length * 2;
+                exprs = Arrays.copyOf(exprs, capacity);
+                negated = Arrays.copyOf(negated, capacity);
+                depths = Arrays.copyOf(depths, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+            }
+            if (binary) {
+                // The minus, if any, is distributed over both operands
+                BinaryExpr b = (BinaryExpr) expr;
+                int node = layout.add(display(b.getOperator().getLexeme()), parent);
+                // Right pushed first so the left subtree is numbered first
+                exprs[top] = b.getRight();
+                negated[top] = neg;
+                depths[top] = depth + 1;
+                parents[top] = node * 2 + 1;
+                top++;
+                exprs[top] = b.getLeft();
+                negated[top] = neg;
+                depths[top] = depth + 1;
+                parents[top] = node * 2;
+                top++;
+            } else {
+                // "-" over a variable, a nested minus or an unknown node,
+                // or a unary operator other than minus
+                int node = layout.add(neg ? MINUS : display(((UnaryExpr) expr).getOperator().getLexeme()), parent);
+                exprs[top] = neg ? expr : ((UnaryExpr) expr).getRight();
+                negated[top] = false;
+                depths[top] = depth + 1;
+                parents[top] = node * 2;
+                top++;
+            }
+        }
+        layout.measure();
+        return layout;
+    }
+
+    /**
+     * Lays out an expression stored in an AstArena, the same way as of(Expr, int)
+     */
+    static TreeLayout of(AstArena arena, int root, int maxDepth) {
+        TreeLayout layout = new TreeLayout();
+
+        // Same pending-subtree stack as for Expr, with arena node indexes
+        int[] nodes = new int[16];
+        boolean[] negated = new boolean[16];
+        int[] depths = new int[16];
+        int[] parents = new int[16];
+        int top = 0;
+        nodes[top] = root;
+        parents[top] = -1;
+        top++;
+
+        while (top > 0) {
+            top--;
+            int n = nodes[top];
+            boolean neg = negated[top];
+            int depth = depths[top];
+            int parent = parents[top];
+
+            while (!neg && arena.op(n) == AstArena.NEGATE) {
+                n = arena.left(n);
+                neg = true;
+            }
+
+            int op = arena.op(n);
+            if (op == AstArena.NUMBER) {
+                layout.add(neg ? MINUS + arena.value(n) : String.valueOf(arena.value(n)), parent);
+                continue;
+            }
+            if (op == AstArena.VARIABLE && !neg) {
+                layout.add(arena.name(n), parent);
+                continue;
+            }
+            if (depth == maxDepth) {
+                layout.add(ELIDED, parent);
+                continue;
+            }
+
+            if (top + 2 > nodes.length) {
+                int capacity = nodes.length * 2;
+                nodes = Arrays.copyOf(nodes, capacity);
+                negated = Arrays.copyOf(negated, capacity);
+                depths = Arrays.copyOf(depths, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+            }
+            if (op >= AstArena.ADD) {
+                int node = layout.add(display(op), parent);
+                nodes[top] = arena.right(n);
+                negated[top] = neg;
+                depths[top] = depth + 1;
+                parents[top] = node * 2 + 1;
+                top++;
+                nodes[top] = arena.left(n);
+                negated[top] = neg;
+                depths[top] = depth + 1;
+                parents[top] = node * 2;
+                top++;
+            } else {
+                // "-" over a variable or a nested minus
+                int node = layout.add(MINUS, parent);
+                nodes[top] = n;
+                negated[top] = false;
+                depths[top] = depth + 1;
+                parents[top] = node * 2;
+                top++;
+            }
+        }
+        layout.measure();
+        return layout;
+    }
+
+    /**
+     * Writes all rows, each followed by '\n'
+     */
+    void write(Appendable out) throws IOException {
+        int[] tasks = new int[64];      // node, row, start column, pad (1/0); node -1: pad to column
+        int root = 0;
+        for (int row = 0; row < heights[root]; row++) {
+            int column = 0;
+            int top = 0;
+            tasks = push(tasks, top, root, row, 0, 0);
+            top += 4;
+
+            while (top > 0) {
+                top -= 4;
+                int node = tasks[top];
+                int r = tasks[top + 1];
+                int start = tasks[top + 2];
+                boolean pad = tasks[top + 3] != 0;
+
+                if (node < 0) {
+                    column = spaces(out, column, start);
+                    continue;
+                }
+                int end = start + widths[node];
+                if (r >= heights[node]) {
+                    column = spaces(out, column, end);
+                    continue;
+                }
+
+                if (lefts[node] < 0) {
+                    out.append(labels[node]);
+                    column += labels[node].length();
+                } else if (rights[node] < 0) {
+                    if (r == 0) {
+                        out.append(labels[node]);
+                        column += labels[node].length();
+                    } else {
+                        out.append(' ');
+                        column++;
+                        if (pad) {
+                            tasks = push(tasks, top, -1, 0, end, 0);
+                            top += 4;
+                        }
+                        tasks = push(tasks, top, lefts[node], r - 1, start + 1, pad ? 1 : 0);
+                        top += 4;
+                        continue;
+                    }
+                } else {
+                    int leftWidth = widths[lefts[node]];
+                    if (r == 0) {
+                        column = spaces(out, column, start + leftWidth + 1);
+                        out.append(labels[node]);
+                        column += labels[node].length();
+                    } else if (r == 1) {
+                        column = spaces(out, column, start + leftWidth);
+                        out.append(CONNECTOR);
+                        column += CONNECTOR.length();
+                    } else {
+                        // Both subtrees padded to their width, 3 spaces in between
+                        if (pad) {
+                            tasks = push(tasks, top, -1, 0, end, 0);
+                            top += 4;
+                        }
+                        tasks = push(tasks, top, rights[node], r - 2, start + leftWidth + 3, 1);
+                        top += 4;
+                        tasks = push(tasks, top, -1, 0, start + leftWidth + 3, 0);
+                        top += 4;
+                        tasks = push(tasks, top, lefts[node], r - 2, start, 1);
+                        top += 4;
+                        continue;
+                    }
+                }
+                if (pad) {
+                    column = spaces(out, column, end);
+                }
+            }
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Fills in widths and heights. Children always have a higher index than their parent,
+     * so going backwards every child is measured before its parent.
+     */
+    private void measure() {
+        widths = new int[size];
+        heights = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            int labelWidth = labels[i].length();
+            if (lefts[i] < 0) {
+                widths[i] = labelWidth;
+                heights[i] = 1;
+            } else if (rights[i] < 0) {
+                widths[i] = Math.max(labelWidth, 1 + widths[lefts[i]]);
+                heights[i] = 1 + heights[lefts[i]];
+            } else {
+                int leftWidth = widths[lefts[i]];
+                int merged = leftWidth + 3 + widths[rights[i]];
+                widths[i] = Math.max(Math.max(leftWidth + 1 + labelWidth, leftWidth + 3), merged);
+                heights[i] = 2 + Math.max(heights[lefts[i]], heights[rights[i]]);
+            }
+        }
+    }
+
+    /**
+     * Adds a layout node and links it to its parent
+     * @param parent  parent * 2 + (1 for the right side), or -1 for the root
+     */
+    private int add(String label, int parent) {
+        if (size == labels.length) {
+            int capacity = size * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            lefts = Arrays.copyOf(lefts, capacity);
+            rights = Arrays.copyOf(rights, capacity);
+        }
+        labels[size] = label;
+        lefts[size] = -1;
+        rights[size] = -1;
+        if (parent >= 0) {
+            if ((parent & 1) == 0) {
+                lefts[parent >> 1] = size;
+            } else {
+                rights[parent >> 1] = size;
+            }
+        }
+        return size++;
+    }
+
+    private static String display(String lexeme) {
+        return "/".equals(lexeme) ? "÷" : lexeme;
+    }
+
+    private static String display(int arenaOp) {
+        return arenaOp == AstArena.DIV ? "÷" : AstArena.symbol(arenaOp);
+    }
+
+    private static int[] push(int[] tasks, int top, int node, int row, int start, int pad) {
+        if (top + 4 > tasks.length) {
+            tasks = Arrays.copyOf(tasks, tasks.length * 2);
+        }
+        tasks[top] = node;
+        tasks[top + 1] = row;
+        tasks[top + 2] = start;
+        tasks[top + 3] = pad;
+        return tasks;
+    }
+
+    /**
+     * Writes spaces until the given column
+     * @return the new column
+     */
+    private static int spaces(Appendable out, int column, int target) throws IOException {
+        while (column < target) {
+            int n = Math.min(target - column, SPACES.length());
+            out.append(SPACES, 0, n);
+            column += n;
+        }
+        return column;
+    }
+}
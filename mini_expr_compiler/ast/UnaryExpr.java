@@ -11,6 +11,7 @@ public class UnaryExpr implements Expr {
     
     private final Token operator; // the operator token ("-"). Full token is stores to printer and eval can use its type / lexeme if needed
     private final Expr right; // the expression the operator applies to. (NumberExpr, UnaryExpr, BinaryExpr)
+    private final int hash;   // structural hash, computed once from the child's (also cached) hash
 
     /**
      * Creates a UnaryExpr node
@@ -20,6 +21,7 @@ public class UnaryExpr implements Expr {
     public UnaryExpr(Token operator, Expr right) {
         this.operator = operator;
         this.right = right;
+        this.hash = (operator.getType().ordinal() + 1) * 31 + right.hashCode();
     }
 
     /**
@@ -35,4 +37,28 @@ public class UnaryExpr implements Expr {
     public Expr getRight() {
         return right;
     }
+
+    /**
+     * Structural equality: same operator type and equal operand.
+     * Token positions are ignored. When operands are shared nodes (see InterningExprFactory)
+     * the comparison stops at the identity check, so it is O(1).
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof UnaryExpr)) {
+            return false;
+        }
+        UnaryExpr other = (UnaryExpr) o;
+        return hash == other.hash
+                && operator.getType() == other.operator.getType()
+                && right.equals(other.right);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
 }
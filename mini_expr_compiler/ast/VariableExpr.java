@@ -0,0 +1,39 @@
+package mini_expr_compiler.ast;
+
+/**
+ * AST node representing a named variable ("x", "price", "row_count")
+ * Its value is supplied at evaluation time, e.g. through Evaluator's variable map
+ * or as a column in ColumnEvaluator.
+ */
+public class VariableExpr implements Expr {
+
+    private final String name;
+
+    /**
+     * Constructs a new VariableExpr
+     * @param name the identifier as written in the source
+     */
+    public VariableExpr(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the name of the variable
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Two variable nodes are equal if they have the same name
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof VariableExpr && ((VariableExpr) o).name.equals(name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode() * 31 + 7;
+    }
+}
@@ -0,0 +1,201 @@
+package mini_expr_compiler.batch;
+
+import mini_expr_compiler.ast.*;
+import mini_expr_compiler.eval.*;
+import mini_expr_compiler.lexer1.*;
+import mini_expr_compiler.parser.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.Arrays;
+
+/**
+ * Evaluates newline-delimited expressions, one per line, and writes one output line per input line:
+ *
+ *   24
+ *   error line 2: Unexpected Token ' at position 3
+ *   -15
+ *
+ * Unlike the interactive Main, nothing else is printed (no tokens, tree or banners).
+ *
+ * Everything that can be reused is: input is read in large blocks into one char[] and each line is
+ * lexed in place from that array with PackedLexer into the same PackedTokens, parsed by the same
+ * PackedParser and evaluated by the same IterativeEvaluator. Results are formatted into a char[] rather than
+ * through Integer.toString. The only per-line allocations are the AST nodes themselves. Neither the
+ * parser nor the evaluator recurses, so deeply nested lines are evaluated like any other line.
+ *
+ * A BatchRunner is not thread-safe.
+ */
+public class BatchRunner {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final PackedLexer lexer = new PackedLexer();
+    private final PackedTokens tokens = new PackedTokens();
+    private final PackedParser parser = new PackedParser(tokens);
+    private final Evaluator evaluator = new IterativeEvaluator();
+
+    private final LineView line = new LineView();
+    private final char[] number = new char[11];     // enough for "-2147483648"
+
+    private long lineCount = 0;
+    private long errorCount = 0;
+
+    /**
+     * Reads expressions from in until end of input and writes a result or error line for each.
+     * Neither stream is closed; out is flushed at the end.
+     * @param in   source of newline-delimited expressions (\n or \r\n)
+     * @param out  destination for results, should be buffered
+     */
+    public void run(Reader in, Writer out) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        int start = 0;      // start of the current line
+        int scan = 0;       // where to continue looking for '\n'
+        int limit = 0;      // end of valid data in buffer
+
+        while (true) {
+            int newline = -1;
+            for (int i = scan; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+
+            if (newline >= 0) {
+                processLine(buffer, start, newline, out);
+                start = newline + 1;
+                scan = start;
+                continue;
+            }
+
+            // No complete line left: move the partial line to the front and read more
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, limit - start);
+                limit -= start;
+                start = 0;
+            }
+            if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);  // a single line longer than the buffer
+            }
+            scan = limit;
+
+            int n = in.read(buffer, limit, buffer.length - limit);
+            if (n < 0) {
+                if (limit > start) {
+                    processLine(buffer, start, limit, out);     // last line without a trailing newline
+                }
+                break;
+            }
+            limit += n;
+        }
+        out.flush();
+    }
+
+    /**
+     * @return number of lines processed so far
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return number of lines that produced an error line
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    private void processLine(char[] buffer, int start, int end, Writer out) throws IOException {
+        lineCount++;
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        line.set(buffer, start, end - start);
+
+        int result;
+        try {
+            lexer.tokenize(line, tokens);
+            Expr ast = parser.parse();
+            result = evaluator.evaluate(ast);
+        } catch (ParseException | RuntimeException e) {
+            // Lexical errors, syntax errors, division by zero and literals too large for an int
+            writeError(String.valueOf(e.getMessage()), out);
+            return;
+        }
+        writeNumber(result, out);
+        out.write('\n');
+    }
+
+    private void writeError(String message, Writer out) throws IOException {
+        errorCount++;
+        out.write("error line ");
+        writeNumber(lineCount, out);
+        out.write(": ");
+        out.write(message);
+        out.write('\n');
+    }
+
+    /**
+     * Writes the decimal digits of value without creating a String
+     */
+    private void writeNumber(long value, Writer out) throws IOException {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            out.write(Long.toString(value));
+            return;
+        }
+        int v = (int) value;
+        int pos = number.length;
+        boolean negative = v < 0;
+        // Work with negative numbers so Integer.MIN_VALUE needs no special case
+        if (!negative) {
+            v = -v;
+        }
+        do {
+            number[--pos] = (char) ('0' - (v % 10));
+            v /= 10;
+        } while (v != 0);
+        if (negative) {
+            number[--pos] = '-';
+        }
+        out.write(number, pos, number.length - pos);
+    }
+
+    /**
+     * A reusable CharSequence over one line of the read buffer, so lines are lexed
+     * without copying them into Strings.
+     */
+    private static final class LineView implements CharSequence {
+        private char[] chars;
+        private int offset;
+        private int length;
+
+        void set(char[] chars, int offset, int length) {
+            this.chars = chars;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, offset, length);
+        }
+    }
+}
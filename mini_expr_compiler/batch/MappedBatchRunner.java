@@ -0,0 +1,287 @@
+package mini_expr_compiler.batch;
+
+import mini_expr_compiler.ast.*;
+import mini_expr_compiler.eval.*;
+import mini_expr_compiler.lexer1.*;
+import mini_expr_compiler.parser.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates a (possibly multi-gigabyte) file of one expression per line using all cores.
+ *
+ * The file is split into chunks of roughly chunkSize bytes, each ending right after a '\n', so no
+ * line crosses a chunk boundary. Every chunk is memory-mapped with FileChannel.map and handled by
+ * its own task: lines are lexed straight from the mapped bytes (the input must be ASCII, each byte
+ * is read as one char, nothing is decoded into Strings), then parsed and evaluated with
+ * PackedLexer / PackedParser / IterativeEvaluator, none of which recurse.
+ *
+ * Output has the same format as BatchRunner and is written in the original line order. Only a
+ * bounded number of chunks are in flight at once, so memory use does not grow with the file size.
+ */
+public class MappedBatchRunner {
+
+    private static final int DEFAULT_CHUNK_SIZE = 16 << 20;    // 16 MB
+
+    private final int threads;
+    private final int chunkSize;
+
+    private long lineCount = 0;
+    private long errorCount = 0;
+
+    public MappedBatchRunner() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param threads    number of worker threads
+     * @param chunkSize  target size of each chunk in bytes (chunks are extended to the next newline)
+     */
+    public MappedBatchRunner(int threads, int chunkSize) {
+        if (threads < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("threads and chunkSize must be positive");
+        }
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Evaluates every line of the file and writes the results, in order, to out.
+     * out is flushed but not closed.
+     */
+    public void run(Path file, Writer out) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ArrayDeque<Future<ChunkResult>> pending = new ArrayDeque<>();
+            int maxInFlight = threads * 2;
+            long start = 0;
+
+            while (start < size) {
+                long end = chunkEnd(channel, start, size);
+                long chunkStart = start;
+                pending.add(pool.submit(() -> evaluateChunk(channel, chunkStart, end)));
+                start = end;
+
+                // Write finished chunks in order, waiting for the oldest if too many are outstanding
+                while (!pending.isEmpty() && (pending.size() >= maxInFlight || pending.peek().isDone())) {
+                    write(await(pending.poll()), out);
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(await(pending.poll()), out);
+            }
+            out.flush();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return number of lines processed so far
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return number of lines that produced an error line
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Finds the end of the chunk starting at start: chunkSize bytes later, extended to just past the next '\n'
+     */
+    private long chunkEnd(FileChannel channel, long start, long size) throws IOException {
+        long position = start + chunkSize;
+        if (position >= size) {
+            return size;
+        }
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (position < size) {
+            probe.clear();
+            int n = channel.read(probe, position);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    private ChunkResult evaluateChunk(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        ChunkWorker worker = new ChunkWorker(bytes);
+        worker.run();
+        return worker.result;
+    }
+
+    private static ChunkResult await(Future<ChunkResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while evaluating file", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to evaluate chunk: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * Copies a finished chunk to out, filling in the global line number of each error
+     */
+    private void write(ChunkResult chunk, Writer out) throws IOException {
+        StringBuilder text = chunk.output;
+        int from = 0;
+        for (int i = 0; i < chunk.errorCount; i++) {
+            int at = chunk.errorOffsets[i];
+            out.append(text, from, at);
+            out.write(Long.toString(lineCount + chunk.errorLines[i]));
+            from = at;
+        }
+        out.append(text, from, text.length());
+
+        lineCount += chunk.lineCount;
+        errorCount += chunk.errorCount;
+    }
+
+    /**
+     * Output of one chunk. Error lines are stored without their line number, since the number of
+     * lines in earlier chunks is not known yet; errorOffsets marks where each number goes and
+     * errorLines holds the line number relative to the start of the chunk.
+     */
+    private static final class ChunkResult {
+        final StringBuilder output = new StringBuilder();
+        int[] errorOffsets = new int[8];
+        int[] errorLines = new int[8];
+        int errorCount = 0;
+        int lineCount = 0;
+
+        void addError(int line) {
+            if (errorCount == errorOffsets.length) {
+                errorOffsets = Arrays.copyOf(errorOffsets, errorCount * 2);
+                errorLines = Arrays.copyOf(errorLines, errorCount * 2);
+            }
+            errorOffsets[errorCount] = output.length();
+            errorLines[errorCount] = line;
+            errorCount++;
+        }
+    }
+
+    /**
+     * Evaluates all lines of one mapped chunk. Each task gets its own worker, so nothing here is shared between threads.
+     */
+    private static final class ChunkWorker {
+        private final ByteBuffer bytes;
+        private final ByteLine line;
+        private final PackedLexer lexer = new PackedLexer();
+        private final PackedTokens tokens = new PackedTokens();
+        private final PackedParser parser = new PackedParser(tokens);
+        private final Evaluator evaluator = new IterativeEvaluator();
+        private final ChunkResult result = new ChunkResult();
+
+        ChunkWorker(ByteBuffer bytes) {
+            this.bytes = bytes;
+            this.line = new ByteLine(bytes);
+        }
+
+        void run() {
+            int limit = bytes.limit();
+            int start = 0;
+            for (int i = 0; i < limit; i++) {
+                if (bytes.get(i) == '\n') {
+                    processLine(start, i);
+                    start = i + 1;
+                }
+            }
+            if (start < limit) {
+                processLine(start, limit);  // last line of the file without a trailing newline
+            }
+        }
+
+        private void processLine(int start, int end) {
+            result.lineCount++;
+            if (end > start && bytes.get(end - 1) == '\r') {
+                end--;
+            }
+            line.set(start, end - start);
+
+            StringBuilder out = result.output;
+            try {
+                lexer.tokenize(line, tokens);
+                Expr ast = parser.parse();
+                out.append(evaluator.evaluate(ast)).append('\n');
+            } catch (ParseException | RuntimeException e) {
+                out.append("error line ");
+                result.addError(result.lineCount);
+                out.append(": ").append(e.getMessage()).append('\n');
+            }
+        }
+    }
+
+    /**
+     * A reusable CharSequence over one line of a mapped chunk. Bytes are widened to chars
+     * directly, which is correct for ASCII input and avoids any charset decoding.
+     */
+    private static final class ByteLine implements CharSequence {
+        private final ByteBuffer bytes;
+        private int offset;
+        private int length;
+
+        ByteLine(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        void set(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(offset + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            StringBuilder sb = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                sb.append(charAt(i));
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package mini_expr_compiler.cache;
+
+import mini_expr_compiler.ast.*;
+import mini_expr_compiler.lexer1.*;
+import mini_expr_compiler.parser.*;
+
+import java.text.ParseException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Thread-safe, size-bounded cache from expression source text to its parsed or compiled form.
+ *
+ * Lookups use the normalized source (whitespace removed, except a single space kept between two
+ * number or name characters so "1 2" does not turn into "12"), so "1+2" and " 1 + 2 " share an entry.
+ * On a miss the source is lexed, parsed with IterativeParser (so deep nesting cannot overflow the
+ * stack) and handed to the compiler function given to the constructor, for example:
+ *
+ *   new ExpressionCache<>(10_000, ast -> ast)                           // cache ASTs
+ *   new ExpressionCache<>(10_000, new BytecodeCompiler()::compile)      // cache CompiledExpr
+ *
+ * Eviction is least-recently-used, bounded either by number of entries or by an estimate of the
+ * bytes used by the cached source text. When several threads miss on the same key at once, only
+ * the first one parses (its own source text, so error positions refer to what that caller passed);
+ * the others wait for its result. Failed parses are not cached.
+ *
+ * @param <V> the cached form of an expression
+ */
+public class ExpressionCache<V> {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 64;     // rough cost of map entry, key object and task
+
+    private final Function<Expr, V> compiler;
+    private final long maxWeight;
+    private final boolean weighBytes;
+    private long weight = 0;
+
+    // Access-ordered map: iteration starts at the least recently used entry. Guarded by 'this'.
+    private final LinkedHashMap<String, FutureTask<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache holding at most maxEntries expressions
+     * @param maxEntries  entry budget (must be positive)
+     * @param compiler    turns a freshly parsed AST into the value to cache
+     */
+    public ExpressionCache(int maxEntries, Function<Expr, V> compiler) {
+        this(maxEntries, false, compiler);
+    }
+
+    private ExpressionCache(long maxWeight, boolean weighBytes, Function<Expr, V> compiler) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Cache budget must be positive: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+        this.weighBytes = weighBytes;
+        this.compiler = compiler;
+    }
+
+    /**
+     * Creates a cache bounded by the approximate memory used for the cached source text
+     * (two bytes per character plus a fixed per-entry overhead). The size of the cached
+     * values themselves is not measured.
+     * @param maxBytes  byte budget (must be positive)
+     * @param compiler  turns a freshly parsed AST into the value to cache
+     */
+    public static <V> ExpressionCache<V> withMaxBytes(long maxBytes, Function<Expr, V> compiler) {
+        return new ExpressionCache<>(maxBytes, true, compiler);
+    }
+
+    /**
+     * Returns the cached value for the expression, parsing and compiling it on a miss
+     * @param source  expression text
+     * @return the cached or newly compiled value
+     * @throws ParseException if the expression has a syntax error
+     * @throws RuntimeException if the lexer finds an unexpected character
+     */
+    public V get(String source) throws ParseException {
+        String key = normalize(source);
+        FutureTask<V> task;
+        boolean loader = false;
+
+        synchronized (this) {
+            task = entries.get(key);
+            if (task == null) {
+                task = new FutureTask<>(() -> compiler.apply(new IterativeParser(new Lexer(source)).parse()));
+                entries.put(key, task);
+                weight += weigh(key);
+                loader = true;
+                evict();
+            }
+        }
+
+        if (loader) {
+            misses.increment();
+            task.run();     // parse on this thread, outside the lock
+        } else {
+            hits.increment();
+        }
+
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            remove(key, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof ParseException) {
+                throw (ParseException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for expression to be parsed", e);
+        }
+    }
+
+    /**
+     * Returns the cached value without parsing on a miss, for callers that lex and parse themselves
+     * (e.g. to time the phases) and then put() the result
+     * @return the cached value, or null if the expression is not cached (or still being parsed)
+     */
+    public V getIfPresent(String source) {
+        FutureTask<V> task;
+        synchronized (this) {
+            task = entries.get(normalize(source));
+        }
+        if (task == null || !task.isDone()) {
+            misses.increment();
+            return null;
+        }
+        try {
+            V value = task.get();
+            hits.increment();
+            return value;
+        } catch (ExecutionException | InterruptedException e) {
+            misses.increment();     // a failed parse about to be removed
+            return null;
+        }
+    }
+
+    /**
+     * Caches a value for the expression that the caller parsed and compiled itself,
+     * replacing any entry for the same normalized source
+     */
+    public void put(String source, V value) {
+        String key = normalize(source);
+        FutureTask<V> task = new FutureTask<>(() -> value);
+        task.run();
+        synchronized (this) {
+            if (entries.put(key, task) == null) {
+                weight += weigh(key);
+            }
+            evict();
+        }
+    }
+
+    /**
+     * Removes all entries. Counters are not reset.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return number of cached expressions
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionCache[size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + "]";
+    }
+
+    /**
+     * Drops least recently used entries until the cache is back within budget.
+     * The newest entry is always kept, even if it alone exceeds the budget.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, FutureTask<V>>> it = entries.entrySet().iterator();
+        while (weight > maxWeight && entries.size() > 1) {
+            Map.Entry<String, FutureTask<V>> eldest = it.next();
+            weight -= weigh(eldest.getKey());
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    private synchronized void remove(String key, FutureTask<V> task) {
+        // Only remove the failed task, not a newer entry for the same key
+        if (entries.get(key) == task) {
+            entries.remove(key);
+            weight -= weigh(key);
+        }
+    }
+
+    private long weigh(String key) {
+        return weighBytes ? 2L * key.length() + ENTRY_OVERHEAD_BYTES : 1;
+    }
+
+    /**
+     * Removes whitespace that does not change the meaning of the expression
+     */
+    static String normalize(String source) {
+        StringBuilder sb = null;
+        int length = source.length();
+        for (int i = 0; i < length; i++) {
+            char c = source.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                if (sb != null) {
+                    sb.append(c);
+                }
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(length);
+                sb.append(source, 0, i);
+            }
+            int next = i;
+            while (next < length && Character.isWhitespace(source.charAt(next))) {
+                next++;
+            }
+            // Whitespace between two numbers or names separates two tokens and must stay
+            if (sb.length() > 0 && isWordChar(sb.charAt(sb.length() - 1))
+                    && next < length && isWordChar(source.charAt(next))) {
+                sb.append(' ');
+            }
+            i = next - 1;
+        }
+        return sb == null ? source : sb.toString();
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
@@ -0,0 +1,91 @@
+package mini_expr_compiler.eval;
+
+import mini_expr_compiler.ast.*;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Evaluates expressions stored in an AstArena.
+ *
+ * ArenaParser adds every node after its children, left subtree first, so the expression rooted at
+ * root is exactly the nodes subtreeStart(root) .. root, already in post-order. Evaluation is then
+ * one forward loop over that range: each node reads its children's results from an int[] and stores
+ * its own. There is no recursion, no explicit stack and no pointer chasing through objects.
+ *
+ * The order of evaluation (and therefore which error is reported first) is the same as Evaluator's.
+ * The arena must hold the expression as one contiguous post-order range, as ArenaParser builds it.
+ * Not thread-safe: the scratch array is reused between calls.
+ */
+public class ArenaEvaluator {
+
+    private final Map<String, Integer> variables;
+    private int[] results = new int[64];
+
+    public ArenaEvaluator() {
+        this(Collections.emptyMap());
+    }
+
+    /**
+     * @param variables  values for the variables that may appear in evaluated expressions
+     */
+    public ArenaEvaluator(Map<String, Integer> variables) {
+        this.variables = variables;
+    }
+
+    /**
+     * Evaluates the expression rooted at root
+     * @param arena  the arena holding the expression
+     * @param root   index of the root node
+     * @return the computed integer result
+     * @throws ArithmeticException if division by zero is attempted
+     * @throws RuntimeException if a variable is undefined or a node has an unknown opcode
+     */
+    public int evaluate(AstArena arena, int root) {
+        int start = arena.subtreeStart(root);
+        int count = root - start + 1;
+        if (results.length < count) {
+            results = new int[Math.max(count, results.length * 2)];
+        }
+        int[] r = results;
+
+        for (int node = start; node <= root; node++) {
+            int i = node - start;
+            switch (arena.op(node)) {
+                case AstArena.NUMBER:
+                    r[i] = arena.value(node);
+                    break;
+                case AstArena.VARIABLE:
+                    String name = arena.name(node);
+                    Integer value = variables.get(name);
+                    if (value == null) {
+                        throw new RuntimeException("Undefined variable: " + name);
+                    }
+                    r[i] = value;
+                    break;
+                case AstArena.NEGATE:
+                    r[i] = -r[arena.left(node) - start];
+                    break;
+                case AstArena.ADD:
+                    r[i] = r[arena.left(node) - start] + r[arena.right(node) - start];
+                    break;
+                case AstArena.SUB:
+                    r[i] = r[arena.left(node) - start] - r[arena.right(node) - start];
+                    break;
+                case AstArena.MUL:
+                    r[i] = r[arena.left(node) - start] * r[arena.right(node) - start];
+                    break;
+                case AstArena.DIV:
+                    int divisor = r[arena.right(node) - start];
+                    if (divisor == 0) {
+                        throw new ArithmeticException("Cannot divide by 0");
+                    }
+                    r[i] = r[arena.left(node) - start] / divisor;
+                    break;
+                default:
+                    throw new RuntimeException("Unknown arena opcode " + arena.op(node) + " at node " + node);
+            }
+        }
+        return r[count - 1];
+    }
+}
@@ -0,0 +1,175 @@
+package mini_expr_compiler.eval;
+
+import mini_expr_compiler.ast.*;
+import mini_expr_compiler.lexer1.TokenType;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Evaluates an expression tree exactly, whatever the size of the numbers.
+ *
+ * Every node is computed with long arithmetic first, with an overflow check that costs a few
+ * instructions (sign tests for + and -, Math.multiplyHigh for *). Only a node whose result does
+ * not fit in a long is computed with BigInteger, and its parent continues with BigInteger only
+ * while the value stays that large: (2^62 * 4) / 8 goes back to long after the division.
+ * So expressions that never overflow allocate nothing but the final result, and one that
+ * overflows in a single subtree pays for BigInteger only along the path from there to the root.
+ *
+ * Results are exact, so they equal Evaluator's whenever no intermediate value leaves the int
+ * range. Division truncates toward zero, as for int. Not thread-safe: use one instance per thread.
+ */
+public class BigIntegerEvaluator {
+
+    private final Map<String, Integer> variables;
+
+    // Result of the last node() call when it did not fit in a long (node() then returns 0), else null
+    private BigInteger wide;
+
+    /**
+     * Creates an evaluator without variables; any VariableExpr is an error
+     */
+    public BigIntegerEvaluator() {
+        this(Collections.emptyMap());
+    }
+
+    /**
+     * @param variables  values for the variables that may appear in evaluated expressions
+     */
+    public BigIntegerEvaluator(Map<String, Integer> variables) {
+        this.variables = variables;
+    }
+
+    /**
+     * @param expr  The root of the expression tree to evaluate (cannot be null)
+     * @return      The exact result of the expression
+     * @throws      ArithmeticException if division by zero is attempted
+     * @throws      RuntimeException if an unsupported operator is encountered, expr type is unknown or a variable is undefined
+     */
+    public BigInteger evaluate(Expr expr) {
+        long value = node(expr);
+        BigInteger result = wide != null ? wide : BigInteger.valueOf(value);
+        wide = null;
+        return result;
+    }
+
+    /**
+     * @return the value of the subtree if it fits in a long; otherwise 0, with the value in 'wide'
+     */
+    private long node(Expr expr) {
+        if (expr instanceof NumberExpr) {
+            NumberExpr n = (NumberExpr) expr;
+            if (n.isInt()) {
+                wide = null;
+                return n.getValue();
+            }
+            return narrow(n.getBigValue());
+        }
+
+        if (expr instanceof VariableExpr) {
+            String name = ((VariableExpr) expr).getName();
+            Integer value = variables.get(name);
+            if (value == null) {
+                throw new RuntimeException("Undefined variable: " + name);
+            }
+            wide = null;
+            return value;
+        }
+
+        if (expr instanceof UnaryExpr) {
+            UnaryExpr u = (UnaryExpr) expr;
+            long right = node(u.getRight());
+            if (u.getOperator().getType() != TokenType.MINUS) {
+                throw new RuntimeException("Unsupported unary operator: " + u.getOperator().getLexeme());
+            }
+            if (wide == null && right != Long.MIN_VALUE) {
+                return -right;
+            }
+            return narrow(big(right, wide).negate());
+        }
+
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            long left = node(b.getLeft());
+            BigInteger wideLeft = wide;
+            long right = node(b.getRight());
+            BigInteger wideRight = wide;
+
+            // Fast path: both operands are longs and so is the result ('wide' is already null)
+            if (wideLeft == null && wideRight == null) {
+                switch (b.getOperator().getType()) {
+                    case PLUS: {
+                        long sum = left + right;
+                        if (((left ^ sum) & (right ^ sum)) >= 0) {
+                            return sum;
+                        }
+                        break;
+                    }
+                    case MINUS: {
+                        long difference = left - right;
+                        if (((left ^ right) & (left ^ difference)) >= 0) {
+                            return difference;
+                        }
+                        break;
+                    }
+                    case STAR: {
+                        long high = Math.multiplyHigh(left, right);
+                        long product = left * right;
+                        if ((high == 0 && product >= 0) || (high == -1 && product < 0)) {
+                            return product;
+                        }
+                        break;
+                    }
+                    case SLASH:
+                        if (right == 0) {
+                            throw new ArithmeticException("Cannot divide by 0");
+                        }
+                        if (left != Long.MIN_VALUE || right != -1) {
+                            return left / right;
+                        }
+                        break;
+                    default:
+                        throw new RuntimeException("Unsupported binary operator: " + b.getOperator().getLexeme());
+                }
+            }
+
+            // Overflowed, or an operand is already a BigInteger
+            BigInteger l = big(left, wideLeft);
+            BigInteger r = big(right, wideRight);
+            switch (b.getOperator().getType()) {
+                case PLUS:
+                    return narrow(l.add(r));
+                case MINUS:
+                    return narrow(l.subtract(r));
+                case STAR:
+                    return narrow(l.multiply(r));
+                case SLASH:
+                    if (r.signum() == 0) {
+                        throw new ArithmeticException("Cannot divide by 0");
+                    }
+                    return narrow(l.divide(r));
+                default:
+                    throw new RuntimeException("Unsupported binary operator: " + b.getOperator().getLexeme());
+            }
+        }
+
+        throw new RuntimeException("Unknown expression: " + expr.getClass().getSimpleName());
+    }
+
+    /**
+     * Returns value as a long if it fits, otherwise stores it in 'wide'
+     */
+    private long narrow(BigInteger value) {
+        if (value.bitLength() < Long.SIZE) {
+            wide = null;
+            return value.longValue();
+        }
+        wide = value;
+        return 0;
+    }
+
+    private static BigInteger big(long value, BigInteger wide) {
+        return wide != null ? wide : BigInteger.valueOf(value);
+    }
+}
@@ -0,0 +1,70 @@
+package mini_expr_compiler.eval;
+
+import mini_expr_compiler.ast.*;
+
+import java.util.Map;
+
+/**
+ * Evaluator with int arithmetic that fails instead of wrapping around: any +, -, *, / or unary
+ * minus whose exact result does not fit in an int throws ArithmeticException ("integer
+ * overflow"), as Math.addExact / subtractExact / multiplyExact / negateExact do. That includes
+ * Integer.MIN_VALUE / -1.
+ *
+ * Results that do fit are the same as Evaluator's. Literals too large for an int are an error too.
+ */
+public class CheckedEvaluator extends Evaluator {
+
+    public CheckedEvaluator() {
+        super();
+    }
+
+    public CheckedEvaluator(Map<String, Integer> variables) {
+        super(variables);
+    }
+
+    /**
+     * @throws ArithmeticException on division by zero or overflow
+     */
+    @Override
+    protected int evaluateNode(Expr expr) {
+        if (expr instanceof UnaryExpr) {
+            UnaryExpr u = (UnaryExpr) expr;
+            int right = evaluateNode(u.getRight());
+
+            switch (u.getOperator().getType()) {
+                case MINUS:
+                    return Math.negateExact(right);
+                default:
+                    throw new RuntimeException("Unsupported unary operator: " + u.getOperator().getLexeme());
+            }
+        }
+
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            int left = evaluateNode(b.getLeft());
+            int right = evaluateNode(b.getRight());
+
+            switch (b.getOperator().getType()) {
+                case PLUS:
+                    return Math.addExact(left, right);
+                case MINUS:
+                    return Math.subtractExact(left, right);
+                case STAR:
+                    return Math.multiplyExact(left, right);
+                case SLASH:
+                    if (right == 0) {
+                        throw new ArithmeticException("Cannot divide by 0");
+                    }
+                    if (left == Integer.MIN_VALUE && right == -1) {
+                        throw new ArithmeticException("integer overflow");
+                    }
+                    return left / right;
+                default:
+                    throw new RuntimeException("Unsupported binary operator: " + b.getOperator().getLexeme());
+            }
+        }
+
+        // Numbers, variables and unknown nodes as in Evaluator
+        return super.evaluateNode(expr);
+    }
+}
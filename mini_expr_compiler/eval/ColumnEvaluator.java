@@ -0,0 +1,284 @@
+package mini_expr_compiler.eval;
+
+import mini_expr_compiler.ast.*;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Evaluates one expression over whole columns of variable values at once.
+ *
+ * Instead of calling Evaluator once per row, each AST node is visited once per call and applied
+ * to every row in a tight loop:
+ *
+ *   int[] out = new ColumnEvaluator().evaluate(expr, Map.of("x", xs, "y", ys));
+ *   // out[i] == value of expr with x = xs[i], y = ys[i]
+ *
+ * Add, subtract, multiply and negate use the jdk.incubator.vector API when the module is available
+ * (run with --add-modules jdk.incubator.vector) so several rows are computed per instruction;
+ * otherwise plain loops are used. Division is always done row by row because it needs the
+ * zero check. Constant subtrees are computed once rather than per row.
+ *
+ * Results match Evaluator row for row. If any row divides by zero the whole call throws
+ * ArithmeticException("Cannot divide by 0"). Input arrays are never modified; intermediate
+ * results reuse their buffers where possible.
+ */
+public class ColumnEvaluator {
+
+    private static final ColumnKernels DEFAULT_KERNELS = loadKernels();
+
+    private final ColumnKernels kernels;
+
+    public ColumnEvaluator() {
+        this(DEFAULT_KERNELS);
+    }
+
+    ColumnEvaluator(ColumnKernels kernels) {
+        this.kernels = kernels;
+    }
+
+    /**
+     * @return true if the Vector API is being used, false for the scalar fallback
+     */
+    public boolean isVectorized() {
+        return !(kernels instanceof ScalarColumnKernels);
+    }
+
+    /**
+     * Evaluates the expression for every row
+     * @param expr     root of the expression tree (cannot be null)
+     * @param columns  one int[] per variable name, all of the same length (the row count)
+     * @return a new array with one result per row
+     * @throws IllegalArgumentException if columns is empty or the columns differ in length
+     * @throws ArithmeticException if division by zero happens in any row
+     * @throws RuntimeException if a variable has no column or an operator / expr type is unsupported
+     */
+    public int[] evaluate(Expr expr, Map<String, int[]> columns) {
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("At least one column is needed to know the number of rows");
+        }
+        int rows = -1;
+        for (Map.Entry<String, int[]> column : columns.entrySet()) {
+            int length = column.getValue().length;
+            if (rows >= 0 && length != rows) {
+                throw new IllegalArgumentException("Column '" + column.getKey() + "' has " + length + " rows, expected " + rows);
+            }
+            rows = length;
+        }
+
+        Column result = new Pass(columns, rows).evaluate(expr);
+        if (result.constant) {
+            int[] out = new int[rows];
+            Arrays.fill(out, result.value);
+            return out;
+        }
+        // A bare variable evaluates to the caller's own array, hand back a copy
+        return result.owned ? result.data : Arrays.copyOf(result.data, rows);
+    }
+
+    private static ColumnKernels loadKernels() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                // Loaded by name so this class still works when the incubator module is missing
+                return (ColumnKernels) Class.forName("mini_expr_compiler.eval.VectorColumnKernels")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // fall back to plain loops
+            }
+        }
+        return new ScalarColumnKernels();
+    }
+
+    /**
+     * Result of evaluating one subtree: either a single constant for all rows or a column.
+     * owned means the array was allocated by this pass and can be overwritten by the parent.
+     */
+    private static final class Column {
+        final boolean constant;
+        final int value;
+        final int[] data;
+        final boolean owned;
+
+        private Column(boolean constant, int value, int[] data, boolean owned) {
+            this.constant = constant;
+            this.value = value;
+            this.data = data;
+            this.owned = owned;
+        }
+
+        static Column of(int value) {
+            return new Column(true, value, null, false);
+        }
+
+        static Column of(int[] data, boolean owned) {
+            return new Column(false, 0, data, owned);
+        }
+    }
+
+    /**
+     * One evaluation over a fixed set of columns
+     */
+    private final class Pass {
+        private final Map<String, int[]> columns;
+        private final int rows;
+
+        Pass(Map<String, int[]> columns, int rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        Column evaluate(Expr expr) {
+            if (expr instanceof NumberExpr) {
+                return Column.of(((NumberExpr) expr).getValue());
+            }
+
+            if (expr instanceof VariableExpr) {
+                String name = ((VariableExpr) expr).getName();
+                int[] data = columns.get(name);
+                if (data == null) {
+                    throw new RuntimeException("Undefined variable: " + name);
+                }
+                return Column.of(data, false);
+            }
+
+            if (expr instanceof UnaryExpr) {
+                UnaryExpr u = (UnaryExpr) expr;
+                Column right = evaluate(u.getRight());
+                switch (u.getOperator().getType()) {
+                    case MINUS:
+                        if (right.constant) {
+                            return Column.of(-right.value);
+                        }
+                        int[] out = target(right, null);
+                        kernels.neg(right.data, out, rows);
+                        return Column.of(out, true);
+                    default:
+                        throw new RuntimeException("Unsupported unary operator: " + u.getOperator().getLexeme());
+                }
+            }
+
+            if (expr instanceof BinaryExpr) {
+                BinaryExpr b = (BinaryExpr) expr;
+                Column left = evaluate(b.getLeft());
+                Column right = evaluate(b.getRight());
+
+                switch (b.getOperator().getType()) {
+                    case PLUS:
+                        return add(left, right);
+                    case MINUS:
+                        return subtract(left, right);
+                    case STAR:
+                        return multiply(left, right);
+                    case SLASH:
+                        return divide(left, right);
+                    default:
+                        throw new RuntimeException("Unsupported binary operator: " + b.getOperator().getLexeme());
+                }
+            }
+
+            throw new RuntimeException("Unknown expression: " + expr.getClass().getSimpleName());
+        }
+
+        private Column add(Column left, Column right) {
+            if (left.constant && right.constant) {
+                return Column.of(left.value + right.value);
+            }
+            int[] out = target(left, right);
+            if (right.constant) {
+                kernels.addScalar(left.data, right.value, out, rows);
+            } else if (left.constant) {
+                kernels.addScalar(right.data, left.value, out, rows);
+            } else {
+                kernels.add(left.data, right.data, out, rows);
+            }
+            return Column.of(out, true);
+        }
+
+        private Column subtract(Column left, Column right) {
+            if (left.constant && right.constant) {
+                return Column.of(left.value - right.value);
+            }
+            int[] out = target(left, right);
+            if (right.constant) {
+                kernels.addScalar(left.data, -right.value, out, rows);
+            } else if (left.constant) {
+                kernels.scalarSub(left.value, right.data, out, rows);
+            } else {
+                kernels.sub(left.data, right.data, out, rows);
+            }
+            return Column.of(out, true);
+        }
+
+        private Column multiply(Column left, Column right) {
+            if (left.constant && right.constant) {
+                return Column.of(left.value * right.value);
+            }
+            int[] out = target(left, right);
+            if (right.constant) {
+                kernels.mulScalar(left.data, right.value, out, rows);
+            } else if (left.constant) {
+                kernels.mulScalar(right.data, left.value, out, rows);
+            } else {
+                kernels.mul(left.data, right.data, out, rows);
+            }
+            return Column.of(out, true);
+        }
+
+        /**
+         * Division stays scalar: every divisor has to be checked for zero
+         */
+        private Column divide(Column left, Column right) {
+            if (right.constant) {
+                if (right.value == 0) {
+                    if (rows == 0) {
+                        return Column.of(0);    // no rows, nothing is actually divided
+                    }
+                    throw new ArithmeticException("Cannot divide by 0");
+                }
+                if (left.constant) {
+                    return Column.of(left.value / right.value);
+                }
+                int[] out = target(left, right);
+                int[] a = left.data;
+                int c = right.value;
+                for (int i = 0; i < rows; i++) {
+                    out[i] = a[i] / c;
+                }
+                return Column.of(out, true);
+            }
+
+            int[] out = target(left, right);
+            int[] d = right.data;
+            for (int i = 0; i < rows; i++) {
+                if (d[i] == 0) {
+                    throw new ArithmeticException("Cannot divide by 0");
+                }
+            }
+            if (left.constant) {
+                int c = left.value;
+                for (int i = 0; i < rows; i++) {
+                    out[i] = c / d[i];
+                }
+            } else {
+                int[] a = left.data;
+                for (int i = 0; i < rows; i++) {
+                    out[i] = a[i] / d[i];
+                }
+            }
+            return Column.of(out, true);
+        }
+
+        /**
+         * Picks the output buffer: an operand's own temporary if there is one, otherwise a new array
+         */
+        private int[] target(Column left, Column right) {
+            if (left.owned) {
+                return left.data;
+            }
+            if (right != null && right.owned) {
+                return right.data;
+            }
+            return new int[rows];
+        }
+    }
+}
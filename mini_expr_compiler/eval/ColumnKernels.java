@@ -0,0 +1,27 @@
+package mini_expr_compiler.eval;
+
+/**
+ * Element-wise int operations over columns, used by ColumnEvaluator.
+ *
+ * Every method writes out[i] for 0 <= i < n. out may be the same array as an input.
+ * Arithmetic wraps on overflow exactly like Evaluator's int arithmetic.
+ */
+interface ColumnKernels {
+
+    void add(int[] a, int[] b, int[] out, int n);
+
+    void sub(int[] a, int[] b, int[] out, int n);
+
+    void mul(int[] a, int[] b, int[] out, int n);
+
+    void neg(int[] a, int[] out, int n);
+
+    /** out = a + c */
+    void addScalar(int[] a, int c, int[] out, int n);
+
+    /** out = c - a */
+    void scalarSub(int c, int[] a, int[] out, int n);
+
+    /** out = a * c */
+    void mulScalar(int[] a, int c, int[] out, int n);
+}
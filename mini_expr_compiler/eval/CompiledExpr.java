@@ -0,0 +1,20 @@
+package mini_expr_compiler.eval;
+
+/**
+ * An expression that has already been translated into an executable form
+ * by one of the compiler backends.
+ *
+ * Unlike Evaluator, a CompiledExpr does not look at the AST again when it runs,
+ * so it can be evaluated many times without paying for the tree walk each time.
+ * Backends must keep the same integer semantics as Evaluator, including
+ * throwing ArithmeticException("Cannot divide by 0").
+ */
+public interface CompiledExpr {
+
+    /**
+     * Evaluates the compiled expression
+     * @return the computed integer result
+     * @throws ArithmeticException if division by zero is attempted
+     */
+    int eval();
+}
@@ -0,0 +1,79 @@
+package mini_expr_compiler.eval;
+
+import mini_expr_compiler.ast.*;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * An Evaluator for expression DAGs, where the same node object can appear several times
+ * (as built by a Parser using InterningExprFactory).
+ *
+ * Every operator node is evaluated at most once per call to evaluate(): its result is remembered
+ * by node identity and reused the next time the node is reached. For (a+b)*(a+b) - (a+b) with a
+ * shared "a+b" node, the addition is computed once instead of three times.
+ *
+ * Works on ordinary trees too, but then the bookkeeping only adds cost.
+ * Not thread-safe: use one instance per thread.
+ */
+public class DagEvaluator extends Evaluator {
+
+    private final Map<Expr, Integer> results = new IdentityHashMap<>();
+    private int depth = 0;      // nesting of evaluateNode() calls, results are dropped when the outermost returns
+
+    public DagEvaluator() {
+        super();
+    }
+
+    public DagEvaluator(Map<String, Integer> variables) {
+        super(variables);
+    }
+
+    /**
+     * Evaluates a node, computing each shared node only once.
+     * Evaluator's recursive calls come back through this method, which is where the caching happens.
+     */
+    @Override
+    protected int evaluateNode(Expr expr) {
+        if (!(expr instanceof BinaryExpr) && !(expr instanceof UnaryExpr)) {
+            return super.evaluateNode(expr);     // leaves are cheaper to recompute than to look up
+        }
+
+        Integer known = results.get(expr);
+        if (known != null) {
+            return known;
+        }
+
+        depth++;
+        try {
+            int value = super.evaluateNode(expr);
+            results.put(expr, value);
+            return value;
+        } finally {
+            if (--depth == 0) {
+                results.clear();
+            }
+        }
+    }
+
+    /**
+     * @return how many distinct nodes are reachable from expr, counting shared nodes once
+     */
+    public static int countDistinctNodes(Expr expr) {
+        Map<Expr, Boolean> seen = new IdentityHashMap<>();
+        countDistinct(expr, seen);
+        return seen.size();
+    }
+
+    private static void countDistinct(Expr expr, Map<Expr, Boolean> seen) {
+        if (seen.put(expr, Boolean.TRUE) != null) {
+            return;
+        }
+        if (expr instanceof UnaryExpr) {
+            countDistinct(((UnaryExpr) expr).getRight(), seen);
+        } else if (expr instanceof BinaryExpr) {
+            countDistinct(((BinaryExpr) expr).getLeft(), seen);
+            countDistinct(((BinaryExpr) expr).getRight(), seen);
+        }
+    }
+}
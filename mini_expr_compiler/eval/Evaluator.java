@@ -1,41 +1,102 @@
 package mini_expr_compiler.eval;
 
 import mini_expr_compiler.ast.*;
+import mini_expr_compiler.metrics.EvalEvent;
+
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * This class implements a post-order tree traversal that recursively evaluates
- * the entire expression tree bottom-up. It supports NumberExpr, UnaryExpr, and BinaryExpr (+, -, *, /)
+ * the entire expression tree bottom-up. It supports NumberExpr, VariableExpr, UnaryExpr, and BinaryExpr (+, -, *, /)
+ * Variable values come from the map given to the constructor.
  * 
  * Error handling includes division-by-zero checks and validation for unsupported operators
  * All arithmetic is performed using integer (int) arithmetic, including integer division
+ *
+ * evaluate() is the entry point and evaluateNode() does the recursion, so while a Flight Recorder
+ * recording has EvalEvent enabled one event is emitted per evaluate(), not per node.
+ * Subclasses change how nodes are evaluated by overriding evaluateNode().
  */
 public class Evaluator {
+
+    private final Map<String, Integer> variables;
+
+    /**
+     * Creates an evaluator without variables; any VariableExpr is an error
+     */
+    public Evaluator() {
+        this(Collections.emptyMap());
+    }
+
+    /**
+     * @param variables  values for the variables that may appear in evaluated expressions
+     */
+    public Evaluator(Map<String, Integer> variables) {
+        this.variables = variables;
+    }
     
     /**
      * Evaluates an expression tree and returns its computed integer result.
+     *
+     * @param expr  The root of the expression tree to evaluate (cannot be null)
+     * @return      The computed integer result of the expression
+     * @throws      ArithmeticException if division by zero is attempted
+     * @throws      RuntimeException if an unsupported operator is encountered, expr type is unknown or a variable is undefined
+     */
+    public int evaluate(Expr expr) {
+        EvalEvent event = new EvalEvent();
+        if (!event.isEnabled()) {
+            return evaluateNode(expr);
+        }
+        event.begin();
+        String outcome = "OK";
+        try {
+            return evaluateNode(expr);
+        } catch (RuntimeException e) {
+            outcome = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.setTree(expr);
+                event.outcome = outcome;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Evaluates one node of the expression tree.
      * 
      * This method uses recursive dispatch based on the expression type:
      * - NumberExpr: returns the value directly (base case)
+     * - VariableExpr: returns the value bound to the name (base case)
      * - UnaryExpr: recursively evaluates the operand and applies the unary operator
      * - BinaryExpr: recursively evaluates both operands and applies the binary operator
      * 
      * @param expr  The root of the expression tree to evaluate (cannot be null)
      * @return      The computed integer result of the expression
      * @throws      ArithmeticException if division by zero is attempted
-     * @throws      RuntimeException if an unsupported operator is encountered or expr type is unknown
+     * @throws      RuntimeException if an unsupported operator is encountered, expr type is unknown or a variable is undefined
      */
-    public int evaluate(Expr expr){
+    protected int evaluateNode(Expr expr){
         if (expr instanceof NumberExpr) {
             // Base case: Leaf node containing a numeric value
             // Return the stored integer directly
             return ((NumberExpr) expr).getValue();  
         }
 
+        if (expr instanceof VariableExpr) {
+            // Base case: look the value up by name
+            return lookupVariable(((VariableExpr) expr).getName());
+        }
+
         if (expr instanceof UnaryExpr) {
             // Unary expression: operator applied to a single operand
             // Recursively evaluate the child operand, then apply the operator
             UnaryExpr u = (UnaryExpr) expr;
-            int right = evaluate(u.getRight());
+            int right = evaluateNode(u.getRight());
 
             switch (u.getOperator().getType()) {
                 case MINUS:
@@ -51,8 +112,8 @@ public class Evaluator {
             // Recursively evaluate both left and right subtrees (post-order traversal),
             // then apply the operator to combine the results
             BinaryExpr b = (BinaryExpr) expr;
-            int left = evaluate(b.getLeft());
-            int right = evaluate(b.getRight());
+            int left = evaluateNode(b.getLeft());
+            int right = evaluateNode(b.getRight());
 
             switch (b.getOperator().getType()) {
                 case PLUS:
@@ -81,4 +142,16 @@ public class Evaluator {
         throw new RuntimeException("Unknown expression: " + expr.getClass().getSimpleName());
         
     }
+
+    /**
+     * @return the value bound to the variable name
+     * @throws RuntimeException if the variable is undefined
+     */
+    protected int lookupVariable(String name) {
+        Integer value = variables.get(name);
+        if (value == null) {
+            throw new RuntimeException("Undefined variable: " + name);
+        }
+        return value;
+    }
 }
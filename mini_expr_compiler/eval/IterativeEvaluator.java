@@ -0,0 +1,165 @@
+package mini_expr_compiler.eval;
+
+import mini_expr_compiler.ast.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Evaluator that walks the tree with explicit stacks instead of recursion, so arbitrarily deep
+ * trees (100k nested parentheses, long chains of unary minus) do not overflow the Java stack.
+ *
+ * It is the same post-order traversal as Evaluator:
+ * - a node is pushed once to schedule its children (right pushed first so the left subtree is
+ *   evaluated first, like Evaluator), then revisited to apply its operator
+ * - leaf values and finished subtree results go onto an int stack
+ *
+ * Each node is pushed and popped twice at most, so evaluation is linear in the number of nodes.
+ * Results and errors are identical to Evaluator. The stacks are reused between calls.
+ * Not thread-safe: use one instance per thread.
+ *
+ * Subclasses created with a poll interval get poll() called every that many nodes, e.g. to stop
+ * a long evaluation that is no longer needed by throwing from it.
+ */
+public class IterativeEvaluator extends Evaluator {
+
+    private final int pollInterval;     // 0: never poll
+
+    private Expr[] nodes = new Expr[64];
+    private boolean[] expanded = new boolean[64];   // true once the node's children have been scheduled
+    private int[] values = new int[64];
+
+    public IterativeEvaluator() {
+        this(Collections.emptyMap());
+    }
+
+    public IterativeEvaluator(Map<String, Integer> variables) {
+        this(variables, 0);
+    }
+
+    /**
+     * @param pollInterval  number of nodes between calls to poll(), 0 for none
+     */
+    protected IterativeEvaluator(Map<String, Integer> variables, int pollInterval) {
+        super(variables);
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Called every pollInterval nodes during evaluateNode(); an exception thrown here ends the evaluation
+     */
+    protected void poll() {
+    }
+
+    /**
+     * Evaluates an expression tree of any depth
+     * @param expr  The root of the expression tree to evaluate (cannot be null)
+     * @return      The computed integer result of the expression
+     * @throws      ArithmeticException if division by zero is attempted
+     * @throws      RuntimeException if an unsupported operator is encountered, expr type is unknown or a variable is undefined
+     */
+    @Override
+    protected int evaluateNode(Expr expr) {
+        int valueTop = 0;
+        push(0, expr, false);
+        int nodeTop = 1;
+        int untilPoll = pollInterval;
+
+        try {
+            while (nodeTop > 0) {
+                Expr node = nodes[--nodeTop];
+                boolean childrenDone = expanded[nodeTop];
+                nodes[nodeTop] = null;
+
+                if (--untilPoll == 0) {
+                    untilPoll = pollInterval;
+                    poll();
+                }
+
+                if (node instanceof NumberExpr) {
+                    valueTop = pushValue(valueTop, ((NumberExpr) node).getValue());
+                    continue;
+                }
+
+                if (node instanceof VariableExpr) {
+                    valueTop = pushValue(valueTop, lookupVariable(((VariableExpr) node).getName()));
+                    continue;
+                }
+
+                if (node instanceof UnaryExpr) {
+                    UnaryExpr u = (UnaryExpr) node;
+                    if (!childrenDone) {
+                        push(nodeTop++, u, true);
+                        push(nodeTop++, u.getRight(), false);
+                        continue;
+                    }
+                    switch (u.getOperator().getType()) {
+                        case MINUS:
+                            values[valueTop - 1] = -values[valueTop - 1];
+                            continue;
+                        default:
+                            throw new RuntimeException("Unsupported unary operator: " + u.getOperator().getLexeme());
+                    }
+                }
+
+                if (node instanceof BinaryExpr) {
+                    BinaryExpr b = (BinaryExpr) node;
+                    if (!childrenDone) {
+                        push(nodeTop++, b, true);
+                        push(nodeTop++, b.getRight(), false);
+                        push(nodeTop++, b.getLeft(), false);     // popped first: left is evaluated before right
+                        continue;
+                    }
+                    int right = values[--valueTop];
+                    int left = values[valueTop - 1];
+                    int result;
+                    switch (b.getOperator().getType()) {
+                        case PLUS:
+                            result = left + right;
+                            break;
+                        case MINUS:
+                            result = left - right;
+                            break;
+                        case STAR:
+                            result = left * right;
+                            break;
+                        case SLASH:
+                            if (right == 0) {
+                                throw new ArithmeticException("Cannot divide by 0");
+                            }
+                            result = left / right;
+                            break;
+                        default:
+                            throw new RuntimeException("Unsupported binary operator: " + b.getOperator().getLexeme());
+                    }
+                    values[valueTop - 1] = result;
+                    continue;
+                }
+
+                throw new RuntimeException("Unknown expression: " + node.getClass().getSimpleName());
+            }
+            return values[0];
+        } finally {
+            // Do not keep the tree reachable through the reused stack (only left over after an exception)
+            Arrays.fill(nodes, 0, nodeTop, null);
+        }
+    }
+
+    private void push(int index, Expr node, boolean childrenDone) {
+        if (index == nodes.length) {
+            nodes = Arrays.copyOf(nodes, index * 2);
+            expanded = Arrays.copyOf(expanded, index * 2);
+        }
+        nodes[index] = node;
+        expanded[index] = childrenDone;
+    }
+
+    private int pushValue(int index, int value) {
+        if (index == values.length) {
+            values = Arrays.copyOf(values, index * 2);
+        }
+        values[index] = value;
+        return index + 1;
+    }
+}
@@ -0,0 +1,91 @@
+package mini_expr_compiler.eval;
+
+import mini_expr_compiler.ast.*;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Evaluates an expression tree with long arithmetic. Like CheckedEvaluator, a result that does not
+ * fit (in a long here) throws ArithmeticException ("long overflow") instead of wrapping around.
+ *
+ * Literals up to Long.MAX_VALUE are accepted; variables are ints, as for Evaluator.
+ */
+public class LongEvaluator {
+
+    private final Map<String, Integer> variables;
+
+    /**
+     * Creates an evaluator without variables; any VariableExpr is an error
+     */
+    public LongEvaluator() {
+        this(Collections.emptyMap());
+    }
+
+    /**
+     * @param variables  values for the variables that may appear in evaluated expressions
+     */
+    public LongEvaluator(Map<String, Integer> variables) {
+        this.variables = variables;
+    }
+
+    /**
+     * @param expr  The root of the expression tree to evaluate (cannot be null)
+     * @return      The computed long result of the expression
+     * @throws      ArithmeticException on division by zero, overflow or a literal too large for a long
+     * @throws      RuntimeException if an unsupported operator is encountered, expr type is unknown or a variable is undefined
+     */
+    public long evaluate(Expr expr) {
+        if (expr instanceof NumberExpr) {
+            return ((NumberExpr) expr).getLongValue();
+        }
+
+        if (expr instanceof VariableExpr) {
+            String name = ((VariableExpr) expr).getName();
+            Integer value = variables.get(name);
+            if (value == null) {
+                throw new RuntimeException("Undefined variable: " + name);
+            }
+            return value;
+        }
+
+        if (expr instanceof UnaryExpr) {
+            UnaryExpr u = (UnaryExpr) expr;
+            long right = evaluate(u.getRight());
+
+            switch (u.getOperator().getType()) {
+                case MINUS:
+                    return Math.negateExact(right);
+                default:
+                    throw new RuntimeException("Unsupported unary operator: " + u.getOperator().getLexeme());
+            }
+        }
+
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            long left = evaluate(b.getLeft());
+            long right = evaluate(b.getRight());
+
+            switch (b.getOperator().getType()) {
+                case PLUS:
+                    return Math.addExact(left, right);
+                case MINUS:
+                    return Math.subtractExact(left, right);
+                case STAR:
+                    return Math.multiplyExact(left, right);
+                case SLASH:
+                    if (right == 0) {
+                        throw new ArithmeticException("Cannot divide by 0");
+                    }
+                    if (left == Long.MIN_VALUE && right == -1) {
+                        throw new ArithmeticException("long overflow");
+                    }
+                    return left / right;
+                default:
+                    throw new RuntimeException("Unsupported binary operator: " + b.getOperator().getLexeme());
+            }
+        }
+
+        throw new RuntimeException("Unknown expression: " + expr.getClass().getSimpleName());
+    }
+}
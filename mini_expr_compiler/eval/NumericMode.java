@@ -0,0 +1,44 @@
+package mini_expr_compiler.eval;
+
+import mini_expr_compiler.ast.*;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * How integer overflow is handled when evaluating
+ */
+public enum NumericMode {
+
+    /** int arithmetic that wraps around on overflow (IterativeEvaluator, any depth), the default everywhere */
+    INT,
+
+    /** int arithmetic that throws ArithmeticException on overflow (CheckedEvaluator) */
+    CHECKED_INT,
+
+    /** long arithmetic that throws ArithmeticException on overflow (LongEvaluator) */
+    LONG,
+
+    /** exact results of any size, on longs until a value gets too large (BigIntegerEvaluator) */
+    BIG_INTEGER;
+
+    /**
+     * @param variables  values for the variables that may appear in evaluated expressions
+     * @return a function evaluating trees in this mode, giving an Integer, Long or BigInteger.
+     *         Like the evaluators it is not thread-safe.
+     */
+    public Function<Expr, Number> evaluator(Map<String, Integer> variables) {
+        switch (this) {
+            case INT:
+                return new IterativeEvaluator(variables)::evaluate;
+            case CHECKED_INT:
+                return new CheckedEvaluator(variables)::evaluate;
+            case LONG:
+                return new LongEvaluator(variables)::evaluate;
+            case BIG_INTEGER:
+                return new BigIntegerEvaluator(variables)::evaluate;
+            default:
+                throw new RuntimeException("Unsupported numeric mode: " + this);
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package mini_expr_compiler.eval;
+
+import mini_expr_compiler.ast.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates one very large expression tree on all cores with fork/join.
+ *
+ * A BinaryExpr whose operands both have at least 'threshold' nodes is a split point: its right
+ * operand becomes a RecursiveAction that other workers can steal while the current one evaluates
+ * the left operand. Subtrees without a split point are evaluated on one thread with
+ * IterativeEvaluator, so they can be of any depth.
+ *
+ * Subtree sizes are computed once per tree, in one iterative pass when the tree is first
+ * evaluated. Only the outcome is kept, for the nodes on the way from the root to a split point
+ * (which child to follow, or "split here"); evaluating the same tree again, e.g. with new variable
+ * values, reuses it. Trees without split points, like long chains a + b + c + ..., are evaluated
+ * sequentially: their shape leaves nothing to do in parallel.
+ *
+ * Results and errors are exactly Evaluator's. Where Evaluator would stop at the first error in its
+ * left-to-right order, this evaluator reports that same error even if a subtree further right
+ * failed first on another thread: a failure in a left operand wins, and cancels the work still
+ * running for its right sibling (checked every 'threshold' nodes, also inside a long sequential
+ * subtree, so at most about that many nodes are evaluated in vain per worker). A failed right operand waits for its left
+ * sibling, which may fail first.
+ *
+ * Thread-safe. The variables map must not change during an evaluation.
+ */
+public class ParallelEvaluator extends Evaluator {
+
+    public static final int DEFAULT_THRESHOLD = 1 << 13;
+
+    // What to do at a node on the way to a split point
+    private static final byte FOLLOW_LEFT = 0;     // only the left operand contains split points
+    private static final byte FOLLOW_RIGHT = 1;    // only the right operand contains split points
+    private static final byte FOLLOW_UNARY = 2;    // the operand of a unary minus contains split points
+    private static final byte SPLIT = 3;           // both operands are large: evaluate them in parallel
+
+    private final Map<String, Integer> variables;
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final ThreadLocal<ChunkEvaluator> sequential;
+
+    private volatile Plan plan;     // of the tree evaluated last
+
+    public ParallelEvaluator() {
+        this(Collections.emptyMap());
+    }
+
+    public ParallelEvaluator(Map<String, Integer> variables) {
+        this(variables, ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param variables  values for the variables that may appear in evaluated expressions
+     * @param pool       where the subtrees are evaluated
+     * @param threshold  minimum size in nodes of both operands for a node to be split
+     */
+    public ParallelEvaluator(Map<String, Integer> variables, ForkJoinPool pool, int threshold) {
+        super(variables);
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be positive: " + threshold);
+        }
+        this.variables = variables;
+        this.pool = pool;
+        this.threshold = threshold;
+        this.sequential = ThreadLocal.withInitial(() -> new ChunkEvaluator(this.variables, threshold));
+    }
+
+    /**
+     * @return number of split points in the tree, i.e. how many tasks evaluating it forks
+     */
+    public int countSplits(Expr expr) {
+        Plan p = planFor(expr);
+        int splits = 0;
+        for (byte action : p.actions.values()) {
+            if (action == SPLIT) {
+                splits++;
+            }
+        }
+        return splits;
+    }
+
+    /**
+     * Evaluates the tree, in parallel where it has split points
+     * @throws ArithmeticException if division by zero is attempted
+     * @throws RuntimeException if an unsupported operator is encountered, expr type is unknown or a variable is undefined
+     */
+    @Override
+    protected int evaluateNode(Expr expr) {
+        Plan p = planFor(expr);
+        if (p.actions.isEmpty()) {
+            return sequential.get().evaluateNode(expr);     // nothing to split
+        }
+        Subtree root = new Subtree(p, expr, new CancelToken());
+        pool.invoke(root);
+        if (root.error != null) {
+            throw root.error;
+        }
+        return root.value;
+    }
+
+    private Plan planFor(Expr expr) {
+        Plan p = plan;
+        if (p == null || p.root != expr) {
+            p = new Plan(expr, threshold);
+            plan = p;
+        }
+        return p;
+    }
+
+    /**
+     * The split decisions for one tree
+     */
+    private static final class Plan {
+        final Expr root;
+        final Map<Expr, Byte> actions = new IdentityHashMap<>();    // only nodes on the way to a split point
+
+        /**
+         * Post-order pass with explicit stacks computing, for every node, its size and whether
+         * it contains a split point; only the latter nodes are recorded.
+         */
+        Plan(Expr root, int threshold) {
+            this.root = root;
+            Expr[] nodes = new Expr[64];
+            boolean[] expanded = new boolean[64];
+            long[] sizes = new long[64];
+            boolean[] hasSplit = new boolean[64];
+            int nodeTop = 0;
+            int valueTop = 0;
+            nodes[nodeTop++] = root;
+
+            while (nodeTop > 0) {
+                Expr node = nodes[--nodeTop];
+                boolean childrenDone = expanded[nodeTop];
+                nodes[nodeTop] = null;
+                if (nodeTop + 3 > nodes.length) {
+                    nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                    expanded = Arrays.copyOf(expanded, expanded.length * 2);
+                }
+                if (valueTop + 2 > sizes.length) {
+                    sizes = Arrays.copyOf(sizes, sizes.length * 2);
+                    hasSplit = Arrays.copyOf(hasSplit, hasSplit.length * 2);
+                }
+
+                if (node instanceof UnaryExpr) {
+                    if (!childrenDone) {
+                        nodes[nodeTop] = node;
+                        expanded[nodeTop++] = true;
+                        nodes[nodeTop] = ((UnaryExpr) node).getRight();
+                        expanded[nodeTop++] = false;
+                        continue;
+                    }
+                    sizes[valueTop - 1]++;
+                    if (hasSplit[valueTop - 1]) {
+                        actions.put(node, FOLLOW_UNARY);
+                    }
+                } else if (node instanceof BinaryExpr) {
+                    BinaryExpr b = (BinaryExpr) node;
+                    if (!childrenDone) {
+                        nodes[nodeTop] = node;
+                        expanded[nodeTop++] = true;
+                        nodes[nodeTop] = b.getRight();
+                        expanded[nodeTop++] = false;
+                        nodes[nodeTop] = b.getLeft();
+                        expanded[nodeTop++] = false;
+                        continue;
+                    }
+                    long rightSize = sizes[--valueTop];
+                    boolean rightSplit = hasSplit[valueTop];
+                    long leftSize = sizes[valueTop - 1];
+                    boolean leftSplit = hasSplit[valueTop - 1];
+                    boolean split = leftSize >= threshold && rightSize >= threshold;
+                    if (split) {
+                        actions.put(node, SPLIT);
+                    } else if (leftSplit) {
+                        actions.put(node, FOLLOW_LEFT);
+                    } else if (rightSplit) {
+                        actions.put(node, FOLLOW_RIGHT);
+                    }
+                    sizes[valueTop - 1] = leftSize + rightSize + 1;
+                    hasSplit[valueTop - 1] = split || leftSplit || rightSplit;
+                } else {
+                    sizes[valueTop] = 1;
+                    hasSplit[valueTop++] = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Cancellation flag of a forked subtree. Cancelling it also cancels the tokens of the subtrees
+     * it forked, so checking is one volatile read however deeply the splits are nested.
+     */
+    private static final class CancelToken {
+        private volatile boolean cancelled;
+        private List<CancelToken> children = new ArrayList<>();    // null once cancelled
+
+        synchronized CancelToken newChild() {
+            CancelToken child = new CancelToken();
+            if (children == null) {
+                child.cancelled = true;
+            } else {
+                children.add(child);
+            }
+            return child;
+        }
+
+        void cancel() {
+            Deque<CancelToken> pending = new ArrayDeque<>();
+            pending.push(this);
+            while (!pending.isEmpty()) {
+                CancelToken t = pending.pop();
+                List<CancelToken> forked;
+                synchronized (t) {
+                    t.cancelled = true;
+                    forked = t.children;
+                    t.children = null;
+                }
+                if (forked != null) {
+                    forked.forEach(pending::push);
+                }
+            }
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Thrown inside a cancelled subtree to stop it; its result is never looked at
+     */
+    private static final class Cancelled extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final Cancelled INSTANCE = new Cancelled();
+
+        private Cancelled() {
+            super("Cancelled", null, false, false);
+        }
+    }
+
+    /**
+     * Evaluates one subtree; the result is in value, or error if it failed
+     */
+    private final class Subtree extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Plan plan;
+        private final Expr expr;
+        private final CancelToken token;
+        int value;
+        RuntimeException error;
+
+        Subtree(Plan plan, Expr expr, CancelToken token) {
+            this.plan = plan;
+            this.expr = expr;
+            this.token = token;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                value = evaluate(expr);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+
+        /**
+         * Follows the plan down to a split point or a subtree without one, then applies the
+         * operators on the way back up, evaluating the small operands beside the path sequentially
+         */
+        private int evaluate(Expr node) {
+            Expr[] path = new Expr[16];
+            int depth = 0;
+            Byte action;
+            while ((action = plan.actions.get(node)) != null && action != SPLIT) {
+                if (depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                }
+                path[depth++] = node;
+                node = action == FOLLOW_UNARY ? ((UnaryExpr) node).getRight()
+                        : action == FOLLOW_LEFT ? ((BinaryExpr) node).getLeft()
+                        : ((BinaryExpr) node).getRight();
+            }
+
+            // The result so far, or the error Evaluator would have thrown so far
+            int result = 0;
+            RuntimeException failure = null;
+            try {
+                result = action == null ? sequential(node) : split((BinaryExpr) node);
+            } catch (Cancelled e) {
+                throw e;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+
+            while (depth > 0) {
+                Expr parent = path[--depth];
+                path[depth] = null;
+                byte parentAction = plan.actions.get(parent);
+                if (parentAction == FOLLOW_UNARY) {
+                    if (failure == null) {
+                        result = applyUnary((UnaryExpr) parent, result);
+                    }
+                    continue;
+                }
+                BinaryExpr b = (BinaryExpr) parent;
+                if (parentAction == FOLLOW_LEFT) {
+                    // Evaluator would not reach the right operand after a failed left one
+                    if (failure == null) {
+                        try {
+                            result = applyBinary(b, result, sequential(b.getRight()));
+                        } catch (Cancelled e) {
+                            throw e;
+                        } catch (RuntimeException e) {
+                            failure = e;
+                        }
+                    }
+                } else {
+                    // The left operand comes first: its error replaces one from the path
+                    try {
+                        int left = sequential(b.getLeft());
+                        if (failure == null) {
+                            result = applyBinary(b, left, result);
+                        }
+                    } catch (Cancelled e) {
+                        throw e;
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return result;
+        }
+
+        private int split(BinaryExpr b) {
+            Subtree right = new Subtree(plan, b.getRight(), token.newChild());
+            right.fork();
+            int left;
+            try {
+                left = evaluate(b.getLeft());
+            } catch (RuntimeException e) {
+                right.token.cancel();
+                right.cancel(false);
+                throw e;
+            }
+            if (right.tryUnfork()) {
+                right.compute();    // nobody stole it, evaluate it here
+            } else {
+                right.join();
+            }
+            if (right.error != null) {
+                throw right.error;
+            }
+            return applyBinary(b, left, right.value);
+        }
+
+        private int sequential(Expr node) {
+            if (token.isCancelled()) {
+                throw Cancelled.INSTANCE;
+            }
+            ChunkEvaluator evaluator = ParallelEvaluator.this.sequential.get();
+            evaluator.token = token;
+            try {
+                return evaluator.evaluateNode(node);
+            } finally {
+                evaluator.token = null;
+            }
+        }
+    }
+
+    /**
+     * IterativeEvaluator for subtrees without split points, stopping when the subtree it works
+     * for is cancelled
+     */
+    private static final class ChunkEvaluator extends IterativeEvaluator {
+        CancelToken token;      // of the subtree being evaluated, null between evaluations
+
+        ChunkEvaluator(Map<String, Integer> variables, int pollInterval) {
+            super(variables, pollInterval);
+        }
+
+        @Override
+        protected void poll() {
+            CancelToken t = token;
+            if (t != null && t.isCancelled()) {
+                throw Cancelled.INSTANCE;
+            }
+        }
+    }
+
+    private static int applyUnary(UnaryExpr u, int right) {
+        switch (u.getOperator().getType()) {
+            case MINUS:
+                return -right;
+            default:
+                throw new RuntimeException("Unsupported unary operator: " + u.getOperator().getLexeme());
+        }
+    }
+
+    private static int applyBinary(BinaryExpr b, int left, int right) {
+        switch (b.getOperator().getType()) {
+            case PLUS:
+                return left + right;
+            case MINUS:
+                return left - right;
+            case STAR:
+                return left * right;
+            case SLASH:
+                if (right == 0) {
+                    throw new ArithmeticException("Cannot divide by 0");
+                }
+                return left / right;
+            default:
+                throw new RuntimeException("Unsupported binary operator: " + b.getOperator().getLexeme());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package mini_expr_compiler.eval;
+
+/**
+ * Plain loop implementation of ColumnKernels.
+ * Used when the Vector API module is not available; the JIT usually auto-vectorizes these loops anyway.
+ */
+final class ScalarColumnKernels implements ColumnKernels {
+
+    @Override
+    public void add(int[] a, int[] b, int[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = a[i] + b[i];
+        }
+    }
+
+    @Override
+    public void sub(int[] a, int[] b, int[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = a[i] - b[i];
+        }
+    }
+
+    @Override
+    public void mul(int[] a, int[] b, int[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = a[i] * b[i];
+        }
+    }
+
+    @Override
+    public void neg(int[] a, int[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = -a[i];
+        }
+    }
+
+    @Override
+    public void addScalar(int[] a, int c, int[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = a[i] + c;
+        }
+    }
+
+    @Override
+    public void scalarSub(int c, int[] a, int[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = c - a[i];
+        }
+    }
+
+    @Override
+    public void mulScalar(int[] a, int c, int[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = a[i] * c;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package mini_expr_compiler.eval;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * ColumnKernels using the jdk.incubator.vector API, processing SPECIES.length() rows per
+ * instruction with a scalar loop for the remaining tail.
+ *
+ * Only loaded by ColumnEvaluator when the jdk.incubator.vector module is present
+ * (run with --add-modules jdk.incubator.vector); otherwise ScalarColumnKernels is used.
+ */
+final class VectorColumnKernels implements ColumnKernels {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public void add(int[] a, int[] b, int[] out, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, a, i).add(IntVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = a[i] + b[i];
+        }
+    }
+
+    @Override
+    public void sub(int[] a, int[] b, int[] out, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, a, i).sub(IntVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = a[i] - b[i];
+        }
+    }
+
+    @Override
+    public void mul(int[] a, int[] b, int[] out, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, a, i).mul(IntVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = a[i] * b[i];
+        }
+    }
+
+    @Override
+    public void neg(int[] a, int[] out, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.NEG).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = -a[i];
+        }
+    }
+
+    @Override
+    public void addScalar(int[] a, int c, int[] out, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, a, i).add(c).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = a[i] + c;
+        }
+    }
+
+    @Override
+    public void scalarSub(int c, int[] a, int[] out, int n) {
+        IntVector broadcast = IntVector.broadcast(SPECIES, c);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            broadcast.sub(IntVector.fromArray(SPECIES, a, i)).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = c - a[i];
+        }
+    }
+
+    @Override
+    public void mulScalar(int[] a, int c, int[] out, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, a, i).mul(c).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = a[i] * c;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package mini_expr_compiler.flow;
+
+import mini_expr_compiler.ast.*;
+import mini_expr_compiler.eval.*;
+import mini_expr_compiler.lexer1.*;
+import mini_expr_compiler.parser.*;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * Lexer -> IterativeParser -> Evaluator as a chain of Flow processors with backpressure.
+ *
+ * Expressions published into the pipeline come out as one Outcome<Integer> each, in the order
+ * they went in: the result, or the lexical error, ParseException or evaluation error for that
+ * expression. Each phase is a StageProcessor with its own executor and a buffer of at most
+ * 'capacity' items, and items only move when the next stage has asked for them, so a producer
+ * faster than the subscriber is held back instead of filling memory:
+ *
+ *   SubmissionPublisher<String> source = new SubmissionPublisher<>(executor, 256);
+ *   ExpressionPipeline pipeline = new ExpressionPipeline(lexPool, parsePool, evalPool, 64, new IterativeEvaluator());
+ *   source.subscribe(pipeline);
+ *   pipeline.subscribe(subscriber);      // requests as many results as it can take
+ *   source.submit("1 + 2");              // blocks while every buffer up to the subscriber is full
+ *
+ * The three phases work on different expressions at the same time. Parsing never recurses, and
+ * neither does evaluation with an IterativeEvaluator (the default), so a deeply nested expression
+ * gets its result like any other.
+ */
+public class ExpressionPipeline implements Flow.Processor<String, Outcome<Integer>> {
+
+    private final StageProcessor<String, Outcome<List<Token>>> lexer;
+    private final StageProcessor<Outcome<Expr>, Outcome<Integer>> evaluator;
+
+    /**
+     * @param lexExecutor    runs the lexer stage
+     * @param parseExecutor  runs the parser stage
+     * @param evalExecutor   runs the evaluator stage
+     * @param capacity       buffer size of each stage
+     * @param eval           evaluates the ASTs; only used from one thread at a time. A recursive
+     *                       Evaluator can overflow the stack on deep input, which ends the pipeline
+     */
+    public ExpressionPipeline(Executor lexExecutor, Executor parseExecutor, Executor evalExecutor, int capacity, Evaluator eval) {
+        this.lexer = new StageProcessor<>(source -> Outcome.of(source, source).then(s -> new Lexer(s).tokenize()), lexExecutor, capacity);
+        StageProcessor<Outcome<List<Token>>, Outcome<Expr>> parser =
+                new StageProcessor<>(tokens -> tokens.then(t -> new IterativeParser(t).parse()), parseExecutor, capacity);
+        this.evaluator = new StageProcessor<>(ast -> ast.then(eval::evaluate), evalExecutor, capacity);
+        lexer.subscribe(parser);
+        parser.subscribe(evaluator);
+    }
+
+    /**
+     * All three stages share one executor (each still runs one item at a time, in order) and
+     * evaluate with an IterativeEvaluator
+     */
+    public ExpressionPipeline(Executor executor, int capacity) {
+        this(executor, executor, executor, capacity, new IterativeEvaluator());
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        lexer.onSubscribe(subscription);
+    }
+
+    @Override
+    public void onNext(String source) {
+        lexer.onNext(source);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        lexer.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        lexer.onComplete();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Outcome<Integer>> subscriber) {
+        evaluator.subscribe(subscriber);
+    }
+}
@@ -0,0 +1,83 @@
+package mini_expr_compiler.flow;
+
+/**
+ * What a pipeline stage produced for one expression: a value, or the exception that stopped it.
+ *
+ * Errors are items like any other, so a bad expression does not end the stream: later stages pass
+ * it on untouched and the subscriber receives it in its place among the results.
+ *
+ * @param <T> the stage's result type
+ */
+public final class Outcome<T> {
+
+    /**
+     * A stage's work on the previous stage's value
+     */
+    @FunctionalInterface
+    public interface Step<T, R> {
+        R apply(T value) throws Exception;
+    }
+
+    private final String source;
+    private final T value;
+    private final Exception error;
+
+    private Outcome(String source, T value, Exception error) {
+        this.source = source;
+        this.value = value;
+        this.error = error;
+    }
+
+    public static <T> Outcome<T> of(String source, T value) {
+        return new Outcome<>(source, value, null);
+    }
+
+    public static <T> Outcome<T> failed(String source, Exception error) {
+        return new Outcome<>(source, null, error);
+    }
+
+    /**
+     * @return the outcome of applying step to the value, or this error passed on unchanged
+     */
+    public <R> Outcome<R> then(Step<? super T, ? extends R> step) {
+        if (error != null) {
+            return failed(source, error);
+        }
+        try {
+            return of(source, step.apply(value));
+        } catch (Exception e) {
+            return failed(source, e);
+        }
+    }
+
+    /**
+     * @return the expression text this outcome belongs to
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the value, null if isError()
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return the exception (RuntimeException from the lexer, ParseException, ArithmeticException, ...),
+     *         null if there was none
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    public boolean isError() {
+        return error != null;
+    }
+
+    @Override
+    public String toString() {
+        return error != null ? "error: " + error.getMessage() : String.valueOf(value);
+    }
+}
@@ -0,0 +1,200 @@
+package mini_expr_compiler.flow;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * One stage of a Flow pipeline: applies a function to every item, on its own executor, in order.
+ *
+ * Backpressure works by demand in both directions:
+ * - upstream is asked for at most 'capacity' items beyond those already passed on, so the
+ *   stage's buffer never holds more than that
+ * - items are only transformed and passed on while the subscriber has requested more, and every
+ *   item passed on frees a buffer slot, which is requested from upstream again
+ * A slow subscriber therefore stalls the stage, which stops requesting, which stalls the stage
+ * before it, up to the source.
+ *
+ * The function runs in a drain loop that is never active on more than one thread at a time, so
+ * items are transformed and delivered in arrival order even on a multi-threaded executor, and the
+ * function does not have to be thread-safe. It should not throw: an exception cancels upstream and
+ * is delivered to the subscriber through onError. Per-item failures belong in the items (see
+ * Outcome).
+ *
+ * A stage accepts one subscriber.
+ */
+public class StageProcessor<T, R> implements Flow.Processor<T, R> {
+
+    private final Function<? super T, ? extends R> function;
+    private final Executor executor;
+    private final int capacity;
+
+    private final Queue<T> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();     // drain requests; the loop runs while > 0
+
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super R> downstream;
+    private volatile boolean upstreamDone = false;
+    private volatile Throwable upstreamError;
+    private volatile boolean cancelled = false;
+    private boolean terminated = false;     // only used in drain()
+
+    /**
+     * @param function  applied to every item
+     * @param executor  runs the stage (it is queued one drain task at a time)
+     * @param capacity  most items requested from upstream and not yet passed on
+     */
+    public StageProcessor(Function<? super T, ? extends R> function, Executor executor, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.function = function;
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    // Upstream side
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();  // already subscribed
+            return;
+        }
+        upstream = subscription;
+        subscription.request(capacity);
+    }
+
+    @Override
+    public void onNext(T item) {
+        buffer.add(item);
+        schedule();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        upstreamError = throwable;
+        upstreamDone = true;
+        schedule();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        schedule();
+    }
+
+    // Downstream side
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super R> subscriber) {
+        if (downstream != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) { }
+
+                @Override
+                public void cancel() { }
+            });
+            subscriber.onError(new IllegalStateException("StageProcessor accepts only one subscriber"));
+            return;
+        }
+        downstream = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    // Rule 3.9 of the Reactive Streams spec: fail the subscription
+                    upstreamError = new IllegalArgumentException("Requested " + n + " items, must be positive");
+                    upstreamDone = true;
+                    cancelUpstream();
+                    buffer.clear();
+                } else {
+                    demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+                }
+                schedule();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                cancelUpstream();
+                buffer.clear();
+            }
+        });
+        schedule();
+    }
+
+    private void cancelUpstream() {
+        Flow.Subscription subscription = upstream;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    private void schedule() {
+        if (wip.getAndIncrement() == 0) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Moves as many items downstream as demand allows, then completes once upstream is done and
+     * the buffer is empty. Runs on the executor, never on two threads at once.
+     */
+    private void drain() {
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super R> subscriber = downstream;
+            if (subscriber != null && !cancelled && !terminated) {
+                long passed = 0;
+                while (demand.get() > 0 && !cancelled) {
+                    boolean done = upstreamDone;     // read before the buffer: items arrive before completion
+                    T item = buffer.poll();
+                    if (item == null) {
+                        if (done) {
+                            terminate(subscriber);
+                        }
+                        break;
+                    }
+                    R result;
+                    try {
+                        result = function.apply(item);
+                    } catch (Throwable e) {
+                        // Any Error too: leaving drain() without releasing wip would stall the stage for good
+                        cancelled = true;
+                        cancelUpstream();
+                        terminated = true;
+                        subscriber.onError(e);
+                        break;
+                    }
+                    demand.decrementAndGet();
+                    passed++;
+                    subscriber.onNext(result);
+                }
+                if (demand.get() == 0 && upstreamDone && buffer.isEmpty() && !terminated && !cancelled) {
+                    terminate(subscriber);      // no demand is needed to complete
+                }
+                if (passed > 0 && !upstreamDone && !cancelled) {
+                    upstream.request(passed);
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void terminate(Flow.Subscriber<? super R> subscriber) {
+        terminated = true;
+        Throwable error = upstreamError;
+        if (error != null) {
+            subscriber.onError(error);
+        } else {
+            subscriber.onComplete();
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package mini_expr_compiler.jit;
+
+import mini_expr_compiler.ast.*;
+import mini_expr_compiler.eval.CompiledExpr;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Compiles an Expr tree into JVM bytecode.
+ *
+ * The tree is translated once into a class with a single method, eval(), whose body is the
+ * post-order walk of the tree written out as stack instructions (push left, push right, apply
+ * operator). The class is loaded as a hidden class through MethodHandles.Lookup.defineHiddenClass,
+ * so it can be garbage collected as soon as the returned CompiledExpr is no longer referenced.
+ *
+ * After compilation nothing about the AST is left at runtime: there is no instanceof chain and no
+ * switch on the operator, and the JIT compiler sees a straight-line method it can optimize like any
+ * other Java code. Evaluator stays the reference implementation; results (including int overflow and
+ * the "Cannot divide by 0" error) are identical.
+ *
+ * Example: 7 - 8 / 2 becomes
+ *   bipush 7
+ *   bipush 8
+ *   iconst_2
+ *   dup; ifne L; new ArithmeticException; ...; athrow     (division by zero check)
+ *   L: idiv
+ *   isub
+ *   ireturn
+ */
+public class BytecodeCompiler {
+
+    private static final String COMPILED_EXPR = "mini_expr_compiler/eval/CompiledExpr";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String ARITHMETIC_EXCEPTION = "java/lang/ArithmeticException";
+
+    // Hidden classes must live in the same package as the Lookup that defines them
+    private static final String GENERATED_CLASS = "mini_expr_compiler/jit/GeneratedExpr";
+
+    private static final int MAX_CODE_LENGTH = 65535;  // JVM limit for a single method body
+
+    // Opcodes used by the generator (JVM specification, chapter 6)
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int DUP = 0x59;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int IMUL = 0x68;
+    private static final int IDIV = 0x6c;
+    private static final int INEG = 0x74;
+    private static final int IFNE = 0x9a;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int NEW = 0xbb;
+    private static final int ATHROW = 0xbf;
+
+    /**
+     * Compiles the expression and loads it as a hidden class
+     * @param expr  root of the expression tree (cannot be null)
+     * @return an instance of the generated class
+     * @throws IllegalArgumentException if the expression is too large for a single JVM method
+     * @throws RuntimeException if an unsupported operator is encountered or expr type is unknown
+     */
+    public CompiledExpr compile(Expr expr) {
+        byte[] classFile = generate(expr);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class));
+            return (CompiledExpr) constructor.invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not load generated class: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Generates the class file bytes for the expression without loading them.
+     * Useful for inspecting the output with javap.
+     * @param expr  root of the expression tree (cannot be null)
+     * @return a complete class file implementing CompiledExpr
+     */
+    public byte[] generate(Expr expr) {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(GENERATED_CLASS);
+        int superClass = pool.classRef(OBJECT);
+        int iface = pool.classRef(COMPILED_EXPR);
+
+        MethodBody eval = new MethodBody(pool);
+        eval.emit(expr);
+        eval.op(IRETURN);
+        if (eval.code.size() > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Expression too large to compile: " + eval.code.size() + " bytes of bytecode");
+        }
+
+        MethodBody init = new MethodBody(pool);
+        init.op(ALOAD_0);
+        init.op(INVOKESPECIAL);
+        init.u2(pool.methodRef(OBJECT, "<init>", "()V"));
+        init.op(RETURN);
+
+        int code = pool.utf8("Code");
+        int stackMapTable = pool.utf8("StackMapTable");
+        int initName = pool.utf8("<init>");
+        int initDesc = pool.utf8("()V");
+        int evalName = pool.utf8("eval");
+        int evalDesc = pool.utf8("()I");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, 0xCAFEBABE);
+        writeShort(out, 0);             // minor version
+        writeShort(out, 52);            // major version (Java 8), the oldest that needs no special flags
+        out.writeBytes(pool.toByteArray());
+        writeShort(out, 0x0031);        // ACC_PUBLIC | ACC_FINAL | ACC_SUPER
+        writeShort(out, thisClass);
+        writeShort(out, superClass);
+        writeShort(out, 1);             // interfaces
+        writeShort(out, iface);
+        writeShort(out, 0);             // fields
+        writeShort(out, 2);             // methods
+        writeMethod(out, initName, initDesc, code, stackMapTable, 1, init);
+        writeMethod(out, evalName, evalDesc, code, stackMapTable, 1, eval);
+        writeShort(out, 0);             // class attributes
+        return out.toByteArray();
+    }
+
+    private static void writeMethod(ByteArrayOutputStream out, int name, int descriptor, int codeAttr,
+                                    int stackMapAttr, int maxLocals, MethodBody body) {
+        byte[] code = body.code.toByteArray();
+        byte[] frames = body.frames.toByteArray();
+        boolean hasFrames = body.frameCount > 0;
+
+        writeShort(out, 0x0001);        // ACC_PUBLIC
+        writeShort(out, name);
+        writeShort(out, descriptor);
+        writeShort(out, 1);             // one attribute: Code
+
+        int stackMapLength = hasFrames ? 2 + frames.length : 0;
+        int codeAttrLength = 2 + 2 + 4 + code.length + 2 + 2 + (hasFrames ? 6 + stackMapLength : 0);
+        writeShort(out, codeAttr);
+        writeInt(out, codeAttrLength);
+        writeShort(out, body.maxStack);
+        writeShort(out, maxLocals);
+        writeInt(out, code.length);
+        out.writeBytes(code);
+        writeShort(out, 0);             // exception table
+        writeShort(out, hasFrames ? 1 : 0);
+        if (hasFrames) {
+            writeShort(out, stackMapAttr);
+            writeInt(out, stackMapLength);
+            writeShort(out, body.frameCount);
+            out.writeBytes(frames);
+        }
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int v) {
+        out.write(v >>> 8);
+        out.write(v);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int v) {
+        writeShort(out, v >>> 16);
+        writeShort(out, v & 0xFFFF);
+    }
+
+    /**
+     * Collects the bytecode of one method while tracking the operand stack depth,
+     * which is needed both for max_stack and for the StackMapTable frames at branch targets.
+     * Every value on the stack is an int, so a frame only needs to know how many there are.
+     */
+    private static final class MethodBody {
+        private final ConstantPool pool;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        private int frameCount = 0;
+        private int lastFrameOffset = -1;
+        private int depth = 0;
+        private int maxStack = 1;       // <init> pushes 'this'
+
+        MethodBody(ConstantPool pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * Post-order walk: operands first, operator last
+         */
+        void emit(Expr expr) {
+            if (expr instanceof NumberExpr) {
+                pushInt(((NumberExpr) expr).getValue());
+                return;
+            }
+
+            if (expr instanceof UnaryExpr) {
+                UnaryExpr u = (UnaryExpr) expr;
+                emit(u.getRight());
+                switch (u.getOperator().getType()) {
+                    case MINUS:
+                        op(INEG);
+                        return;
+                    default:
+                        throw new RuntimeException("Unsupported unary operator: " + u.getOperator().getLexeme());
+                }
+            }
+
+            if (expr instanceof BinaryExpr) {
+                BinaryExpr b = (BinaryExpr) expr;
+                emit(b.getLeft());
+                emit(b.getRight());
+                switch (b.getOperator().getType()) {
+                    case PLUS:
+                        op(IADD);
+                        break;
+                    case MINUS:
+                        op(ISUB);
+                        break;
+                    case STAR:
+                        op(IMUL);
+                        break;
+                    case SLASH:
+                        divideChecked();
+                        break;
+                    default:
+                        throw new RuntimeException("Unsupported binary operator: " + b.getOperator().getLexeme());
+                }
+                depth--;        // two operands in, one result out
+                return;
+            }
+
+            throw new RuntimeException("Unknown expression: " + expr.getClass().getSimpleName());
+        }
+
+        /**
+         * Emits idiv preceded by the same zero check Evaluator does:
+         *
+         *       dup
+         *       ifne L
+         *       new ArithmeticException
+         *       dup
+         *       ldc_w "Cannot divide by 0"
+         *       invokespecial ArithmeticException.<init>(String)
+         *       athrow
+         *   L:  idiv
+         */
+        private void divideChecked() {
+            op(DUP);
+            grow(1);
+            op(IFNE);
+            u2(14);                     // jump over the 14 bytes of ifne + throw sequence below
+            depth--;
+            op(NEW);
+            u2(pool.classRef(ARITHMETIC_EXCEPTION));
+            op(DUP);
+            grow(2);
+            op(LDC_W);
+            u2(pool.string("Cannot divide by 0"));
+            grow(1);
+            op(INVOKESPECIAL);
+            u2(pool.methodRef(ARITHMETIC_EXCEPTION, "<init>", "(Ljava/lang/String;)V"));
+            op(ATHROW);
+            depth -= 3;
+
+            frame();                    // L is only reachable by the branch, the verifier needs its frame
+            op(IDIV);
+        }
+
+        private void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                code.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                u2(value);
+            } else {
+                int index = pool.integer(value);
+                if (index <= 0xFF) {
+                    op(LDC);
+                    code.write(index);
+                } else {
+                    op(LDC_W);
+                    u2(index);
+                }
+            }
+            grow(1);
+        }
+
+        /**
+         * Records a full_frame at the current offset: no locals, 'depth' ints on the stack
+         */
+        private void frame() {
+            int offset = code.size();
+            int delta = lastFrameOffset < 0 ? offset : offset - lastFrameOffset - 1;
+            frames.write(255);          // full_frame
+            frames.write(delta >>> 8);
+            frames.write(delta);
+            frames.write(0);            // number_of_locals
+            frames.write(0);
+            frames.write(depth >>> 8);  // number_of_stack_items
+            frames.write(depth);
+            for (int i = 0; i < depth; i++) {
+                frames.write(1);        // ITEM_Integer
+            }
+            lastFrameOffset = offset;
+            frameCount++;
+        }
+
+        private void grow(int n) {
+            depth += n;
+            if (depth > maxStack) {
+                maxStack = depth;
+            }
+        }
+
+        void op(int opcode) {
+            code.write(opcode);
+        }
+
+        void u2(int v) {
+            code.write(v >>> 8);
+            code.write(v);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package mini_expr_compiler.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the constant pool of a generated class file.
+ *
+ * Every entry is added at most once: asking for the same constant again returns
+ * the index that was handed out the first time. Indexes start at 1 as required
+ * by the class file format.
+ */
+class ConstantPool {
+
+    // Tags from the JVM specification (section 4.4)
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private int count = 1;     // index 0 is never used
+
+    int utf8(String value) {
+        String key = "U" + value;
+        Integer index = indexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        write(CONSTANT_UTF8);
+        try {
+            out.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);    // cannot happen for an in-memory stream
+        }
+        return register(key);
+    }
+
+    int integer(int value) {
+        String key = "I" + value;
+        Integer index = indexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        write(CONSTANT_INTEGER);
+        writeInt(value);
+        return register(key);
+    }
+
+    int classRef(String internalName) {
+        String key = "C" + internalName;
+        Integer index = indexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        int name = utf8(internalName);
+        write(CONSTANT_CLASS);
+        writeShort(name);
+        return register(key);
+    }
+
+    int string(String value) {
+        String key = "S" + value;
+        Integer index = indexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        int utf = utf8(value);
+        write(CONSTANT_STRING);
+        writeShort(utf);
+        return register(key);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        String key = "M" + owner + "." + name + descriptor;
+        Integer index = indexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        write(CONSTANT_METHODREF);
+        writeShort(ownerIndex);
+        writeShort(nameAndType);
+        return register(key);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        String key = "N" + name + ":" + descriptor;
+        Integer index = indexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        write(CONSTANT_NAME_AND_TYPE);
+        writeShort(nameIndex);
+        writeShort(descriptorIndex);
+        return register(key);
+    }
+
+    /**
+     * @return the constant_pool_count value followed by all entries, ready to be copied into the class file
+     */
+    byte[] toByteArray() {
+        if (count > 0xFFFF) {
+            throw new IllegalStateException("Too many constants in generated class: " + count);
+        }
+        byte[] entries = bytes.toByteArray();
+        byte[] result = new byte[entries.length + 2];
+        result[0] = (byte) (count >>> 8);
+        result[1] = (byte) count;
+        System.arraycopy(entries, 0, result, 2, entries.length);
+        return result;
+    }
+
+    private int register(String key) {
+        int index = count++;
+        indexes.put(key, index);
+        return index;
+    }
+
+    private void write(int b) {
+        bytes.write(b);
+    }
+
+    private void writeShort(int v) {
+        bytes.write(v >>> 8);
+        bytes.write(v);
+    }
+
+    private void writeInt(int v) {
+        writeShort(v >>> 16);
+        writeShort(v & 0xFFFF);
+    }
+}
@@ -0,0 +1,91 @@
+package mini_expr_compiler.lexer1;
+
+/**
+ * Editable text for IncrementalLexer.
+ *
+ * The characters live in one array with a gap at the last edit position. An edit moves the gap
+ * there (copying only the characters in between) and fills or widens it, so a run of edits
+ * close to each other, like typing, costs about the size of the edits, not of the text.
+ */
+final class GapBuffer implements CharSequence {
+
+    private char[] chars;
+    private int gapStart;
+    private int gapEnd;
+
+    GapBuffer(CharSequence text) {
+        int length = text.length();
+        chars = new char[Math.max(16, length + length / 4)];
+        for (int i = 0; i < length; i++) {
+            chars[i] = text.charAt(i);
+        }
+        gapStart = length;
+        gapEnd = chars.length;
+    }
+
+    /**
+     * Replaces the characters in [start, end) with text
+     */
+    void replace(int start, int end, CharSequence text) {
+        moveGap(start);
+        gapEnd += end - start;
+        int n = text.length();
+        if (n > gapEnd - gapStart) {
+            grow(n);
+        }
+        for (int i = 0; i < n; i++) {
+            chars[gapStart++] = text.charAt(i);
+        }
+    }
+
+    @Override
+    public int length() {
+        return chars.length - (gapEnd - gapStart);
+    }
+
+    @Override
+    public char charAt(int index) {
+        return index < gapStart ? chars[index] : chars[index + gapEnd - gapStart];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            sb.append(charAt(i));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder(length()).append(chars, 0, gapStart).append(chars, gapEnd, chars.length - gapEnd).toString();
+    }
+
+    private void moveGap(int index) {
+        if (index < gapStart) {
+            int n = gapStart - index;
+            System.arraycopy(chars, index, chars, gapEnd - n, n);
+            gapStart -= n;
+            gapEnd -= n;
+        } else if (index > gapStart) {
+            int n = index - gapStart;
+            System.arraycopy(chars, gapEnd, chars, gapStart, n);
+            gapStart += n;
+            gapEnd += n;
+        }
+    }
+
+    /**
+     * Makes the gap at least n characters wide
+     */
+    private void grow(int n) {
+        int tail = chars.length - gapEnd;
+        int capacity = Math.max(chars.length * 2, gapStart + n + tail + 16);
+        char[] grown = new char[capacity];
+        System.arraycopy(chars, 0, grown, 0, gapStart);
+        System.arraycopy(chars, gapEnd, grown, capacity - tail, tail);
+        chars = grown;
+        gapEnd = capacity - tail;
+    }
+}
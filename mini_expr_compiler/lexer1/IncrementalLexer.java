@@ -0,0 +1,287 @@
+package mini_expr_compiler.lexer1;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Keeps the tokens of a text up to date while the text is edited, re-lexing only around each edit.
+ *
+ * An edit (offset, deleted length, inserted text) can only change the tokens that touch the
+ * edited range. Lexing restarts at the first of those and stops as soon as a new token starts
+ * exactly where an old token starts (after shifting it by the change in length): from there on
+ * the characters are unchanged, so the old tokens are still right.
+ *
+ * Both the text and the tokens are stored in gap buffers with the gap at the last edit. Tokens
+ * after the gap store their position relative to a shared base, so the tokens after an edit are
+ * shifted without touching them. The cost of an edit depends on the size of the edit
+ * and how far it is from the previous one, not on the size of the text.
+ *
+ * After each edit getEditStart(), getRemovedTokens() and getInsertedTokens() describe which
+ * tokens were replaced, which is what IncrementalParser needs to reuse the rest of its tree.
+ */
+public class IncrementalLexer {
+
+    private final GapBuffer text;
+
+    // Token gap buffer. Tokens before the gap are stored with their position, tokens after it with
+    // (position - suffixBase), so shifting all of them is one addition to suffixBase.
+    // Token objects after the gap may carry an out of date position until they are read.
+    private Token[] tokens = new Token[64];
+    private int[] positions = new int[64];
+    private int gapStart = 0;
+    private int gapEnd = 64;
+    private int suffixBase = 0;
+
+    private boolean valid = false;  // false after a lexical error, the next edit re-lexes everything
+
+    private int editStart;
+    private int removedTokens;
+    private int insertedTokens;
+
+    /**
+     * Lexes the whole text
+     * @throws RuntimeException if an unexpected character is encountered
+     */
+    public IncrementalLexer(CharSequence text) {
+        this.text = new GapBuffer(text);
+        relexAll();
+    }
+
+    /**
+     * Replaces deletedLength characters at offset with inserted and updates the tokens
+     * @throws RuntimeException if the new text has an unexpected character. The text is still
+     *         edited; the tokens are rebuilt by the next edit.
+     */
+    public void edit(int offset, int deletedLength, CharSequence inserted) {
+        int oldLength = text.length();
+        if (offset < 0 || deletedLength < 0 || offset + deletedLength > oldLength) {
+            throw new IndexOutOfBoundsException("Edit [" + offset + ", " + (offset + deletedLength) + ") outside text of length " + oldLength);
+        }
+        text.replace(offset, offset + deletedLength, inserted);
+        if (!valid) {
+            relexAll();
+            return;
+        }
+        int delta = inserted.length() - deletedLength;
+        int count = tokenCount();
+
+        // First token that ends at or after the edit (a token ending right at offset can grow),
+        // lexing restarts there or at offset, whichever comes first
+        int first = firstEndingAtOrAfter(offset);
+        int start = Math.min(position(first), offset);
+
+        Lexer lexer = new Lexer(text, start);
+        List<Token> fresh = new ArrayList<>();
+        int insertedEnd = offset + inserted.length();
+        int old = first;
+        int resync = count;
+        try {
+            while (true) {
+                Token t = lexer.next();
+                if (t.getPosition() >= insertedEnd) {
+                    // Past the edit: stop at the first old token starting at the same place
+                    while (old < count && position(old) + delta < t.getPosition()) {
+                        old++;
+                    }
+                    if (old < count && position(old) + delta == t.getPosition()
+                            && position(old) >= offset + deletedLength) {
+                        resync = old;
+                        break;
+                    }
+                }
+                fresh.add(t);
+                if (t.getType() == TokenType.EOF) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            valid = false;
+            throw e;
+        }
+
+        replace(first, resync, fresh, delta);
+        editStart = first;
+        removedTokens = resync - first;
+        insertedTokens = fresh.size();
+    }
+
+    /**
+     * @return the tokens, ending with EOF. The list is a view: it changes with every edit.
+     */
+    public List<Token> getTokens() {
+        return new TokenList();
+    }
+
+    /**
+     * @return the current text. The sequence is a view: it changes with every edit.
+     */
+    public CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * @return number of tokens, including EOF
+     */
+    public int tokenCount() {
+        return gapStart + tokens.length - gapEnd;
+    }
+
+    /**
+     * @return the token at index, with its current position
+     */
+    public Token token(int index) {
+        if (index < gapStart) {
+            return tokens[index];
+        }
+        int i = index + gapEnd - gapStart;
+        Token t = tokens[i];
+        int position = positions[i] + suffixBase;
+        if (t.getPosition() != position) {
+            t = new Token(t.getType(), t.getLexeme(), t.getNumericValue(), position);
+            tokens[i] = t;
+        }
+        return t;
+    }
+
+    /**
+     * @return the position of the token at index in the current text
+     */
+    public int position(int index) {
+        return index < gapStart ? positions[index] : positions[index + gapEnd - gapStart] + suffixBase;
+    }
+
+    /**
+     * @return index of the first token the last edit replaced
+     */
+    public int getEditStart() {
+        return editStart;
+    }
+
+    /**
+     * @return how many tokens the last edit removed, starting at getEditStart()
+     */
+    public int getRemovedTokens() {
+        return removedTokens;
+    }
+
+    /**
+     * @return how many new tokens the last edit put in their place
+     */
+    public int getInsertedTokens() {
+        return insertedTokens;
+    }
+
+    private void relexAll() {
+        int count = tokenCount();
+        List<Token> all;
+        try {
+            all = new Lexer(text).tokenize();
+        } catch (RuntimeException e) {
+            valid = false;
+            throw e;
+        }
+        replace(0, count, all, 0);
+        valid = true;
+        editStart = 0;
+        removedTokens = count;
+        insertedTokens = all.size();
+    }
+
+    /**
+     * Binary search for the first token whose end (position + length) is at or after offset.
+     * The EOF token ends at the end of the text, so there always is one.
+     */
+    private int firstEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = tokenCount() - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (position(mid) + lexemeLength(mid) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int lexemeLength(int index) {
+        return tokens[index < gapStart ? index : index + gapEnd - gapStart].getLexeme().length();
+    }
+
+    /**
+     * Replaces the tokens in [from, to) with fresh ones
+     * @param delta  change in text length; the tokens after 'to' move by this much
+     */
+    private void replace(int from, int to, List<Token> fresh, int delta) {
+        moveGap(from);
+        gapEnd += to - from;
+        if (fresh.size() > gapEnd - gapStart) {
+            grow(fresh.size());
+        }
+        for (Token t : fresh) {
+            tokens[gapStart] = t;
+            positions[gapStart] = t.getPosition();
+            gapStart++;
+        }
+        // Shifts every token after the gap at once
+        suffixBase += delta;
+    }
+
+    private void moveGap(int index) {
+        int gap = gapEnd - gapStart;
+        if (index < gapStart) {
+            // Tokens move behind the gap: store them relative to suffixBase
+            for (int i = gapStart - 1; i >= index; i--) {
+                tokens[i + gap] = tokens[i];
+                positions[i + gap] = positions[i] - suffixBase;
+            }
+        } else if (index > gapStart) {
+            // Tokens move in front of the gap: give them their real position
+            for (int i = gapStart; i < index; i++) {
+                int position = positions[i + gap] + suffixBase;
+                Token t = tokens[i + gap];
+                tokens[i] = t.getPosition() == position ? t : new Token(t.getType(), t.getLexeme(), t.getNumericValue(), position);
+                positions[i] = position;
+            }
+        }
+        gapStart = index;
+        gapEnd = index + gap;
+        Arrays.fill(tokens, gapStart, gapEnd, null);
+    }
+
+    private void grow(int n) {
+        int tail = tokens.length - gapEnd;
+        int capacity = Math.max(tokens.length * 2, gapStart + n + tail + 16);
+        Token[] grownTokens = new Token[capacity];
+        int[] grownPositions = new int[capacity];
+        System.arraycopy(tokens, 0, grownTokens, 0, gapStart);
+        System.arraycopy(positions, 0, grownPositions, 0, gapStart);
+        System.arraycopy(tokens, gapEnd, grownTokens, capacity - tail, tail);
+        System.arraycopy(positions, gapEnd, grownPositions, capacity - tail, tail);
+        tokens = grownTokens;
+        positions = grownPositions;
+        gapEnd = capacity - tail;
+    }
+
+    /**
+     * Read-only view of the tokens
+     */
+    private final class TokenList extends AbstractList<Token> implements RandomAccess {
+        @Override
+        public Token get(int index) {
+            if (index < 0 || index >= tokenCount()) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + tokenCount());
+            }
+            return token(index);
+        }
+
+        @Override
+        public int size() {
+            return tokenCount();
+        }
+    }
+}
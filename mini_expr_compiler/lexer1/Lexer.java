@@ -1,22 +1,89 @@
 package mini_expr_compiler.lexer1;
 
+import mini_expr_compiler.metrics.LexEvent;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.ObjIntConsumer;
 
 /**
  * The Lexer  takes a raw string input like: (24 + 36) * 78 - 2
  * and converts it into a sequence of token objects (e.g NUMBER(12), PLUS(3),...)
+ *
+ * The lexer is pull-based: each call to next() scans just far enough to produce one token.
+ * Input can be any CharSequence (String, StringBuilder, CharBuffer) or a Reader, which is
+ * read through a fixed-size buffer, so memory use does not depend on the size of the input.
+ * tokenize() is kept for callers that want the whole list at once.
+ *
+ * By default the first unexpected character ends lexing with a RuntimeException. With an error
+ * handler set (see onError()) it is reported and skipped instead, so one pass finds all of them.
+ *
+ * While a Flight Recorder recording has LexEvent enabled, each run from the first token to EOF
+ * (or a lexical error) is emitted as one event. Otherwise the only cost is one check per token.
  */
-public class Lexer {
+public class Lexer implements TokenSource {
 
-    private final String input;
+    private static final int BUFFER_SIZE = 8192;
+
+    // Exactly one of input / reader is set
+    private final CharSequence input;
     private final int length;
-    private int current = 0;
+    private final Reader reader;
+
+    private final char[] buffer;    // window of the reader, unused for CharSequence input
+    private int bufferPos = 0;
+    private int bufferLimit = 0;
+
+    private ObjIntConsumer<String> errorHandler;    // null: throw on an unexpected character
+
+    private final StringBuilder digits = new StringBuilder();   // reused for number and identifier lexemes
+    private int current = 0;        // position of the next character in the whole input
 
-    public Lexer(String input) {
+    private boolean started = false;    // set by the first next()
+    private LexEvent event;             // null unless a recording wants LexEvents
+    private int startPos;
+    private int tokenCount;
+
+    public Lexer(CharSequence input) {
         this.input = input;
         this.length = input.length();
+        this.reader = null;
+        this.buffer = null;
+    }
+
+    /**
+     * Creates a lexer that starts scanning at an offset into the input.
+     * Token positions are still offsets into the whole input.
+     * @param start  the start of a token, or whitespace between tokens
+     */
+    public Lexer(CharSequence input, int start) {
+        this(input);
+        this.current = start;
+    }
+
+    /**
+     * Creates a lexer that reads characters from a Reader as tokens are requested.
+     * The reader is not closed by the lexer.
+     */
+    public Lexer(Reader reader) {
+        this.input = null;
+        this.length = -1;
+        this.reader = reader;
+        this.buffer = new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Makes the lexer report unexpected characters instead of throwing: each one is passed to the
+     * handler, with the message the exception would have had and its position, and then skipped.
+     * @return this lexer
+     */
+    public Lexer onError(ObjIntConsumer<String> handler) {
+        this.errorHandler = handler;
+        return this;
     }
 
     /**
@@ -29,6 +96,68 @@ public class Lexer {
     public List<Token> tokenize() {
         List<Token> tokens = new ArrayList<>();
 
+        Token t;
+        do {
+            t = next();
+            tokens.add(t);
+        } while (t.getType() != TokenType.EOF);
+
+        return tokens;
+    }
+
+    /**
+     * Scans the next token from the input
+     *
+     * @return the next token, or an EOF token once the input is exhausted
+     * @throws RuntimeException if an unexpected character is encountered
+     */
+    @Override
+    public Token next() {
+        if (!started) {
+            start();
+        }
+        if (event == null) {
+            return scan();
+        }
+        try {
+            Token t = scan();
+            tokenCount++;
+            if (t.getType() == TokenType.EOF) {
+                commit("OK");
+            }
+            return t;
+        } catch (RuntimeException e) {
+            commit(e.getClass().getSimpleName());
+            throw e;
+        }
+    }
+
+    private void start() {
+        started = true;
+        LexEvent e = new LexEvent();
+        if (e.isEnabled()) {
+            e.begin();
+            event = e;
+            startPos = current;
+        }
+    }
+
+    private void commit(String outcome) {
+        LexEvent e = event;
+        event = null;   // once per run, even if next() is called again after EOF
+        e.end();
+        if (e.shouldCommit()) {
+            e.inputLength = current - startPos;
+            e.tokenCount = tokenCount;
+            e.outcome = outcome;
+            e.commit();
+        }
+    }
+
+    /**
+     * next() without the event bookkeeping
+     */
+    private Token scan() {
         while (!isAtEnd()) {
             char c = peek();
 
@@ -43,88 +172,145 @@ public class Lexer {
 
             // Number literal (we'll treat all digits as integers and store as double)
             if (Character.isDigit(c)) {
-                tokens.add(numberToken());
-                continue;
+                return numberToken();
+            }
+
+            // Identifier: a letter or '_' followed by letters, digits or '_'
+            if (isIdentifierStart(c)) {
+                return identifierToken();
             }
 
             // Single-character tokens (operators and parentheses)
             switch(c) {
                 case '+':
-                    tokens.add(new Token(TokenType.PLUS, "+", startPos));
                     advance();
-                    break;
+                    return new Token(TokenType.PLUS, "+", startPos);
                 case '-':
-                    tokens.add(new Token(TokenType.MINUS, "-", startPos));
                     advance();
-                    break;
+                    return new Token(TokenType.MINUS, "-", startPos);
                 case '*':
-                    tokens.add(new Token(TokenType.STAR, "*", startPos));
                     advance();
-                    break;
+                    return new Token(TokenType.STAR, "*", startPos);
                 case '/':
-                    tokens.add(new Token(TokenType.SLASH, "/", startPos));
                     advance();
-                    break;
+                    return new Token(TokenType.SLASH, "/", startPos);
                 case '(':
-                    tokens.add(new Token(TokenType.LPAREN, "(", startPos));
                     advance();
-                    break;
+                    return new Token(TokenType.LPAREN, "(", startPos);
                 case ')':
-                    tokens.add(new Token(TokenType.RPAREN, ")", startPos));
                     advance();
-                    break;
+                    return new Token(TokenType.RPAREN, ")", startPos);
                 default:
                     // Anything else would be an error
-                    throw new RuntimeException("Unexpected character '" + c + "' at position " + startPos);
+                    String message = "Unexpected character '" + c + "' at position " + startPos;
+                    if (errorHandler == null) {
+                        throw new RuntimeException(message);
+                    }
+                    advance();
+                    errorHandler.accept(message, startPos);
             }
         }
 
         // Final EOF token to mark end-of-input
-        tokens.add(new Token(TokenType.EOF, "", current));
-        return tokens;
+        return new Token(TokenType.EOF, "", current);
     }
 
     /**
      * Handles a sequence of digits and returns a NUMBER token
      * "321 -> NUMBER(321.0)"
+     * Literals too large for an int get no numeric value, see Token.getBigValue()
      */
     private Token numberToken() {
         int start = current;
 
         // Consume all consecutive digits
+        digits.setLength(0);
         while (!isAtEnd() && Character.isDigit(peek())) {
-            advance();
+            digits.append(advance());
         }
 
-        String lexeme = input.substring(start, current);
-        int value = Integer.parseInt(lexeme);
+        String lexeme = digits.toString();
+        Integer value;
+        if (lexeme.length() < 10) {
+            value = Integer.parseInt(lexeme);   // at most 999,999,999
+        } else {
+            BigInteger big = new BigInteger(lexeme);
+            value = big.bitLength() < Integer.SIZE ? big.intValue() : null;
+        }
 
         return new Token(TokenType.NUMBER, lexeme, value, start);
     }
 
+    /**
+     * Handles a variable name and returns an IDENTIFIER token
+     * "price_2" -> IDENTIFIER(price_2)
+     */
+    private Token identifierToken() {
+        int start = current;
+
+        digits.setLength(0);
+        while (!isAtEnd() && isIdentifierPart(peek())) {
+            digits.append(advance());
+        }
+
+        return new Token(TokenType.IDENTIFIER, digits.toString(), start);
+    }
+
+    static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_';
+    }
+
+    static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
     /**
      * @return true if weve consumed all characters in the input
      */
     private boolean isAtEnd() {
-        return current >= length;
+        if (input != null) {
+            return current >= length;
+        }
+        return bufferPos >= bufferLimit && !fill();
     }
 
     /**
      * @return the current character without consuming it
      */
     private char peek() {
-        return input.charAt(current);
+        return input != null ? input.charAt(current) : buffer[bufferPos];
     }
 
     /**
      * Consumes and returns the current character, then moves forward one step
      */
     private char advance() {
-        char c = input.charAt(current);
+        char c = peek();
         current++;
+        if (input == null) {
+            bufferPos++;
+        }
         return c;
     }
 
+    /**
+     * Reads the next block of characters from the reader into the buffer
+     * @return false if the reader has no more characters
+     */
+    private boolean fill() {
+        try {
+            int n;
+            do {
+                n = reader.read(buffer, 0, buffer.length);
+            } while (n == 0);
+            bufferPos = 0;
+            bufferLimit = Math.max(n, 0);
+            return n > 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read input at position " + current, e);
+        }
+    }
+
     public static String formatTokenList(List<Token> tokens) {
         StringBuilder sb = new StringBuilder();
         sb.append("["); 
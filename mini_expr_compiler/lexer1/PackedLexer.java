@@ -0,0 +1,107 @@
+package mini_expr_compiler.lexer1;
+
+/**
+ * A lexer that writes its output into PackedTokens instead of creating Token objects.
+ *
+ * It accepts exactly the same input as Lexer, but numbers are converted while their
+ * digits are scanned instead of through substring + Integer.parseInt, and nothing
+ * is allocated per token. Reusing the same PackedTokens for many inputs makes
+ * lexing allocation-free once its arrays have grown to fit.
+ *
+ * Like Lexer, a literal too large for an int is not an error here: it is marked in the
+ * PackedTokens (see PackedTokens.isInt) and PackedParser keeps its exact value.
+ */
+public class PackedLexer {
+
+    /**
+     * Tokenizes the input into a new PackedTokens
+     * @throws RuntimeException if an unexpected character is encountered
+     */
+    public PackedTokens tokenize(CharSequence input) {
+        return tokenize(input, new PackedTokens());
+    }
+
+    /**
+     * Tokenizes the input into an existing PackedTokens, replacing its previous contents
+     * @param input   the expression text
+     * @param tokens  the token storage to reuse
+     * @return tokens, filled and ending with an EOF token
+     * @throws RuntimeException if an unexpected character is encountered
+     */
+    public PackedTokens tokenize(CharSequence input, PackedTokens tokens) {
+        tokens.reset(input);
+        int length = input.length();
+        int current = 0;
+
+        while (current < length) {
+            char c = input.charAt(current);
+            int startPos = current;
+
+            if (Character.isWhitespace(c)) {
+                current++;
+                continue;
+            }
+
+            if (Character.isDigit(c)) {
+                // Accumulate the value while scanning instead of substring + Integer.parseInt
+                int value = 0;
+                boolean fits = true;
+                while (current < length) {
+                    char d = input.charAt(current);
+                    int digit = d >= '0' && d <= '9' ? d - '0' : Character.isDigit(d) ? Character.digit(d, 10) : -1;
+                    if (digit < 0) {
+                        break;
+                    }
+                    if (fits && value > (Integer.MAX_VALUE - digit) / 10) {
+                        fits = false;   // keep scanning, the parser reads the digits from the input
+                    }
+                    value = value * 10 + digit;
+                    current++;
+                }
+                if (fits) {
+                    tokens.add(TokenType.NUMBER, startPos, current - startPos, value);
+                } else {
+                    tokens.addOversized(startPos, current - startPos);
+                }
+                continue;
+            }
+
+            if (Lexer.isIdentifierStart(c)) {
+                while (current < length && Lexer.isIdentifierPart(input.charAt(current))) {
+                    current++;
+                }
+                tokens.add(TokenType.IDENTIFIER, startPos, current - startPos, 0);
+                continue;
+            }
+
+            TokenType type;
+            switch (c) {
+                case '+':
+                    type = TokenType.PLUS;
+                    break;
+                case '-':
+                    type = TokenType.MINUS;
+                    break;
+                case '*':
+                    type = TokenType.STAR;
+                    break;
+                case '/':
+                    type = TokenType.SLASH;
+                    break;
+                case '(':
+                    type = TokenType.LPAREN;
+                    break;
+                case ')':
+                    type = TokenType.RPAREN;
+                    break;
+                default:
+                    throw new RuntimeException("Unexpected character '" + c + "' at position " + startPos);
+            }
+            tokens.add(type, startPos, 1, 0);
+            current++;
+        }
+
+        tokens.add(TokenType.EOF, current, 0, 0);
+        return tokens;
+    }
+}
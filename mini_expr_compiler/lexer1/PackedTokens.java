@@ -0,0 +1,124 @@
+package mini_expr_compiler.lexer1;
+
+import java.util.Arrays;
+
+/**
+ * A compact list of tokens stored in parallel primitive arrays instead of Token objects.
+ *
+ * Token i is described by:
+ * - type(i)    its TokenType (stored as a byte ordinal)
+ * - start(i)   starting character index in the input
+ * - length(i)  number of characters
+ * - value(i)   numeric value for NUMBER tokens, 0 otherwise
+ * - isInt(i)   false for a NUMBER token too large for an int (its value is 0, the digits are lexeme(i))
+ *
+ * The lexeme is not stored; lexeme(i) cuts it out of the input only when asked
+ * (for example to build an error message).
+ *
+ * The arrays only grow, so one PackedTokens can be reused across inputs with no
+ * further allocation once it is large enough. Filled by PackedLexer, read by PackedParser.
+ */
+public final class PackedTokens {
+
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private CharSequence input = "";
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY];
+    private boolean[] oversized = new boolean[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * @return number of tokens, including the final EOF token
+     */
+    public int size() {
+        return size;
+    }
+
+    public TokenType type(int i) {
+        return TYPES[types[i]];
+    }
+
+    public int start(int i) {
+        return starts[i];
+    }
+
+    public int length(int i) {
+        return lengths[i];
+    }
+
+    /**
+     * @return the numeric value of a NUMBER token, 0 for other tokens
+     */
+    public int value(int i) {
+        return values[i];
+    }
+
+    /**
+     * @return false if token i is a NUMBER too large for an int, true otherwise
+     */
+    public boolean isInt(int i) {
+        return !oversized[i];
+    }
+
+    /**
+     * @return the source text of token i (allocates a String)
+     */
+    public String lexeme(int i) {
+        return input.subSequence(starts[i], starts[i] + lengths[i]).toString();
+    }
+
+    /**
+     * @return token i as a regular Token object (allocates)
+     */
+    public Token toToken(int i) {
+        TokenType type = type(i);
+        if (type == TokenType.NUMBER) {
+            return new Token(type, lexeme(i), oversized[i] ? null : values[i], starts[i]);
+        }
+        return new Token(type, lexeme(i), starts[i]);
+    }
+
+    /**
+     * @return the input these tokens were scanned from
+     */
+    public CharSequence getInput() {
+        return input;
+    }
+
+    /**
+     * Forgets all tokens and starts over for a new input, keeping the arrays
+     */
+    void reset(CharSequence input) {
+        this.input = input;
+        this.size = 0;
+    }
+
+    void add(TokenType type, int start, int length, int value) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            values = Arrays.copyOf(values, capacity);
+            oversized = Arrays.copyOf(oversized, capacity);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        values[size] = value;
+        oversized[size] = false;
+        size++;
+    }
+
+    /**
+     * Adds a NUMBER token whose value does not fit in an int
+     */
+    void addOversized(int start, int length) {
+        add(TokenType.NUMBER, start, length, 0);
+        oversized[size - 1] = true;
+    }
+}
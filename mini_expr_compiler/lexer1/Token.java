@@ -1,9 +1,13 @@
 package mini_expr_compiler.lexer1;
+
+import java.math.BigInteger;
+
 /**
  * A Token represents one unit produced by the lexer
  * 
  * Example:
  * - "42" = NUMBER token
+ * - "x" = IDENTIFIER token
  * - "+" = PLUS token
  * - ")" = LPAREN token
  * 
@@ -18,7 +22,7 @@ public class Token {
 
     private final TokenType type;
     private final String lexeme;
-    private final Integer numericValue;  // only positive values
+    private final Integer numericValue;  // only positive values; null for literals that do not fit in an int
     private final int position;         // index in original input string
 
     /**
@@ -50,12 +54,19 @@ public class Token {
     }
 
     /**
-     * @return the numeric value of the token, or null if non-number
+     * @return the numeric value of the token, or null if non-number or too large for an int
      */
     public Integer getNumericValue() {
         return numericValue;
     }
 
+    /**
+     * @return the value of a NUMBER token of any size
+     */
+    public BigInteger getBigValue() {
+        return numericValue != null ? BigInteger.valueOf(numericValue) : new BigInteger(lexeme);
+    }
+
     public int getPosition() {
         return position;
     }
@@ -63,7 +74,7 @@ public class Token {
     @Override
     public String toString() {
         if (type == TokenType.NUMBER) {
-            return String.format("Token %s, '%s', value = %s, pos = %d" , type, lexeme, numericValue, position);
+            return String.format("Token %s, '%s', value = %s, pos = %d" , type, lexeme, numericValue != null ? numericValue : lexeme, position);
         } else {
             return String.format("Token %s, '%s', pos = %d" , type, lexeme, position);
         }
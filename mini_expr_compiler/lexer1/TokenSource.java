@@ -0,0 +1,40 @@
+package mini_expr_compiler.lexer1;
+
+import java.util.List;
+
+/**
+ * A pull-based stream of tokens.
+ *
+ * The parser asks for one token at a time instead of receiving the whole list up front,
+ * so the lexer never has to hold more than the token it is currently producing.
+ * Once the input is exhausted, next() keeps returning an EOF token.
+ */
+public interface TokenSource {
+
+    /**
+     * Produces the next token
+     * @return the next token, or an EOF token at the end of input
+     * @throws RuntimeException if an unexpected character is encountered
+     */
+    Token next();
+
+    /**
+     * Adapts an already tokenized list (as returned by Lexer.tokenize()) to a TokenSource
+     * @param tokens  list of tokens ending with an EOF token
+     */
+    static TokenSource of(List<Token> tokens) {
+        return new TokenSource() {
+            private int index = 0;
+
+            @Override
+            public Token next() {
+                // Stay on the final EOF token instead of running off the end of the list
+                Token t = tokens.get(index);
+                if (index < tokens.size() - 1) {
+                    index++;
+                }
+                return t;
+            }
+        };
+    }
+}
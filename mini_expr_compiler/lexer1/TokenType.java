@@ -6,6 +6,7 @@ package mini_expr_compiler.lexer1;
 public enum TokenType {
     // Literals
     NUMBER,     // '3'
+    IDENTIFIER, // 'x', 'price_2'
 
     // Single-character operators 
     PLUS,       // '+'
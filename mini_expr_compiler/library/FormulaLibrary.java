@@ -0,0 +1,288 @@
+package mini_expr_compiler.library;
+
+import mini_expr_compiler.ast.*;
+import mini_expr_compiler.lexer1.Token;
+import mini_expr_compiler.lexer1.TokenType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static mini_expr_compiler.library.LibraryFormat.*;
+
+/**
+ * A formula library written by FormulaLibraryWriter, evaluated straight from its bytes.
+ *
+ * open() memory-maps the file and reads only the header and the variable names, so loading takes
+ * the same time for ten formulas or a million; the OS pages the rest in as formulas are used.
+ * evaluate() interprets a formula's postfix code from the buffer with absolute reads, with no
+ * lexing, parsing or tree in between. getExpr() rebuilds the AST for the other backends.
+ *
+ * Immutable and thread-safe.
+ */
+public final class FormulaLibrary {
+
+    private final ByteBuffer buffer;
+    private final int formulaCount;
+    private final int formulaTable;
+    private final int constantPool;
+    private final int strings;
+    private final int code;
+    private final String[] variableNames;
+
+    private volatile Map<String, Integer> indexes;  // by formula name, built on the first indexOf()
+
+    private FormulaLibrary(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a formula library");
+        }
+        int major = Short.toUnsignedInt(buffer.getShort(MAJOR));
+        if (major != MAJOR_VERSION) {
+            throw new IOException("Unsupported formula library version " + major + "."
+                    + Short.toUnsignedInt(buffer.getShort(MINOR)) + ", expected " + MAJOR_VERSION + ".x");
+        }
+        if (buffer.getInt(FILE_LENGTH) != buffer.limit()) {
+            throw new IOException("Formula library is " + buffer.limit() + " bytes, header says " + buffer.getInt(FILE_LENGTH));
+        }
+        this.formulaCount = buffer.getInt(FORMULA_COUNT);
+        this.formulaTable = buffer.getInt(FORMULA_TABLE);
+        this.constantPool = buffer.getInt(CONSTANT_POOL);
+        this.strings = buffer.getInt(STRINGS);
+        this.code = buffer.getInt(CODE);
+
+        int variableTable = buffer.getInt(VARIABLE_TABLE);
+        this.variableNames = new String[buffer.getInt(VARIABLE_COUNT)];
+        for (int i = 0; i < variableNames.length; i++) {
+            variableNames[i] = string(buffer.getInt(variableTable + 4 * i));
+        }
+    }
+
+    /**
+     * Maps a library file into memory. The mapping stays valid after this returns and is released
+     * when the library is garbage collected.
+     * @throws IOException if the file cannot be read or is not a library of a supported version
+     */
+    public static FormulaLibrary open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Formula library larger than 2 GB: " + file);
+            }
+            return new FormulaLibrary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads a library from a buffer holding the whole file, from index 0 to its limit (the
+     * buffer's position is ignored and left unchanged). The content is used as is, not copied,
+     * and must not be modified afterwards.
+     */
+    public static FormulaLibrary wrap(ByteBuffer buffer) throws IOException {
+        return new FormulaLibrary(buffer.duplicate().position(0).slice());
+    }
+
+    public int getFormulaCount() {
+        return formulaCount;
+    }
+
+    public String getName(int formula) {
+        return string(entry(formula, 3));
+    }
+
+    /**
+     * @return the index of the first formula with that name, or -1
+     */
+    public int indexOf(String name) {
+        Map<String, Integer> map = indexes;
+        if (map == null) {
+            map = new HashMap<>(formulaCount * 2);
+            for (int i = formulaCount - 1; i >= 0; i--) {
+                map.put(getName(i), i);
+            }
+            indexes = map;
+        }
+        return map.getOrDefault(name, -1);
+    }
+
+    /**
+     * @return the deepest the operand stack gets while evaluating the formula
+     */
+    public int getMaxStack(int formula) {
+        return entry(formula, 2);
+    }
+
+    /**
+     * @return the number of distinct variables used by the formulas of the library
+     */
+    public int getVariableCount() {
+        return variableNames.length;
+    }
+
+    /**
+     * @return the name of the variable whose value is values[variable] in evaluate(int, int[])
+     */
+    public String getVariableName(int variable) {
+        return variableNames[variable];
+    }
+
+    /**
+     * @return the index of the variable in the library, or -1 if no formula uses it
+     */
+    public int variableIndex(String name) {
+        for (int i = 0; i < variableNames.length; i++) {
+            if (variableNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Evaluates a formula with variables looked up by name, like Evaluator
+     * @throws ArithmeticException if division by zero is attempted
+     * @throws RuntimeException if a variable is undefined
+     */
+    public int evaluate(int formula, Map<String, Integer> variables) {
+        return run(formula, null, variables);
+    }
+
+    /**
+     * Evaluates a formula with variables bound by index, which saves a map lookup per use
+     * @param values  values[i] is the value of getVariableName(i)
+     * @throws ArithmeticException if division by zero is attempted
+     */
+    public int evaluate(int formula, int[] values) {
+        return run(formula, values, null);
+    }
+
+    private int run(int formula, int[] values, Map<String, Integer> variables) {
+        final ByteBuffer b = buffer;
+        final int[] s = new int[entry(formula, 2)];
+        int pc = code + entry(formula, 0);
+        final int end = pc + entry(formula, 1);
+        int sp = 0;     // index of the next free slot
+
+        while (pc < end) {
+            byte opcode = b.get(pc++);
+            switch (opcode) {
+                case CONST:
+                case LOAD: {
+                    // Unsigned LEB128 index
+                    int index = 0;
+                    int shift = 0;
+                    byte part;
+                    do {
+                        part = b.get(pc++);
+                        index |= (part & 0x7F) << shift;
+                        shift += 7;
+                    } while (part < 0);
+                    s[sp++] = opcode == CONST ? b.getInt(constantPool + 4 * index)
+                            : values != null ? values[index] : lookupVariable(variables, index);
+                    break;
+                }
+                case ADD:
+                    sp--;
+                    s[sp - 1] += s[sp];
+                    break;
+                case SUB:
+                    sp--;
+                    s[sp - 1] -= s[sp];
+                    break;
+                case MUL:
+                    sp--;
+                    s[sp - 1] *= s[sp];
+                    break;
+                case DIV:
+                    sp--;
+                    if (s[sp] == 0) {
+                        throw new ArithmeticException("Cannot divide by 0");
+                    }
+                    s[sp - 1] /= s[sp];
+                    break;
+                case NEG:
+                    s[sp - 1] = -s[sp - 1];
+                    break;
+                default:
+                    throw new IllegalStateException("Invalid opcode " + opcode + " at " + (pc - 1));
+            }
+        }
+        return s[0];
+    }
+
+    private int lookupVariable(Map<String, Integer> variables, int index) {
+        Integer value = variables.get(variableNames[index]);
+        if (value == null) {
+            throw new RuntimeException("Undefined variable: " + variableNames[index]);
+        }
+        return value;
+    }
+
+    /**
+     * Rebuilds the formula's AST, e.g. to print or optimize it. Operator tokens have no source
+     * position (-1).
+     */
+    public Expr getExpr(int formula) {
+        final ByteBuffer b = buffer;
+        Expr[] s = new Expr[entry(formula, 2)];
+        int pc = code + entry(formula, 0);
+        final int end = pc + entry(formula, 1);
+        int sp = 0;
+
+        while (pc < end) {
+            byte opcode = b.get(pc++);
+            if (opcode == CONST || opcode == LOAD) {
+                int index = 0;
+                int shift = 0;
+                byte part;
+                do {
+                    part = b.get(pc++);
+                    index |= (part & 0x7F) << shift;
+                    shift += 7;
+                } while (part < 0);
+                s[sp++] = opcode == CONST ? new NumberExpr(b.getInt(constantPool + 4 * index)) : new VariableExpr(variableNames[index]);
+            } else if (opcode == NEG) {
+                s[sp - 1] = new UnaryExpr(new Token(TokenType.MINUS, "-", -1), s[sp - 1]);
+            } else {
+                sp--;
+                s[sp - 1] = new BinaryExpr(s[sp - 1], operator(opcode, pc - 1), s[sp]);
+            }
+        }
+        return s[0];
+    }
+
+    private static Token operator(byte opcode, int pc) {
+        switch (opcode) {
+            case ADD:
+                return new Token(TokenType.PLUS, "+", -1);
+            case SUB:
+                return new Token(TokenType.MINUS, "-", -1);
+            case MUL:
+                return new Token(TokenType.STAR, "*", -1);
+            case DIV:
+                return new Token(TokenType.SLASH, "/", -1);
+            default:
+                throw new IllegalStateException("Invalid opcode " + opcode + " at " + pc);
+        }
+    }
+
+    private int entry(int formula, int field) {
+        if (formula < 0 || formula >= formulaCount) {
+            throw new IndexOutOfBoundsException("Formula " + formula + " out of range 0.." + (formulaCount - 1));
+        }
+        return buffer.getInt(formulaTable + formula * FORMULA_ENTRY_SIZE + 4 * field);
+    }
+
+    private String string(int offset) {
+        int at = strings + offset;
+        int length = Short.toUnsignedInt(buffer.getShort(at));
+        byte[] utf8 = new byte[length];
+        buffer.get(at + 2, utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,372 @@
+package mini_expr_compiler.library;
+
+import mini_expr_compiler.ast.*;
+import mini_expr_compiler.lexer1.Lexer;
+import mini_expr_compiler.parser.Parser;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static mini_expr_compiler.library.LibraryFormat.*;
+
+/**
+ * Compiles parsed expressions into a formula library file (layout in LibraryFormat), which
+ * FormulaLibrary evaluates without lexing or parsing them again.
+ *
+ * Each formula becomes a postfix stream of one-byte opcodes. Literals and variable names are
+ * stored once for the whole library, in the constant pool and variable table, and referenced by
+ * index, so formulas that share them stay small.
+ *
+ * Also a command line tool:
+ *
+ *   java mini_expr_compiler.library.FormulaLibraryWriter formulas.txt formulas.mexl
+ *
+ * compiles one formula per line, written "name = expression" or just "expression" (then named
+ * by its line number). Blank lines are skipped; lines that fail to parse are reported in the batch
+ * format ("error line N: ...") and left out, and the exit status is then 1.
+ */
+public class FormulaLibraryWriter {
+
+    private int[] formulas = new int[4 * 64];    // FORMULA_ENTRY_SIZE bytes each, as 4 ints
+    private int formulaCount = 0;
+
+    private final Map<Integer, Integer> constantIndexes = new HashMap<>();
+    private int[] constants = new int[64];
+
+    private final Map<String, Integer> variableIndexes = new HashMap<>();
+    private int[] variables = new int[16];      // string offsets of the names
+
+    private final Map<String, Integer> stringOffsets = new HashMap<>();
+    private byte[] strings = new byte[1024];
+    private int stringsLength = 0;
+
+    private byte[] code = new byte[4096];
+    private int codeLength = 0;
+
+    // Scratch stacks of the post-order walk, kept between calls to add()
+    private Expr[] pending = new Expr[64];
+    private boolean[] expanded = new boolean[64];
+
+    // Names the current add() put into variableIndexes / stringOffsets, to undo them if it fails
+    private final List<String> newVariables = new ArrayList<>();
+    private final List<String> newStrings = new ArrayList<>();
+
+    /**
+     * Compiles a formula and appends it to the library
+     * @param name  looked up with FormulaLibrary.indexOf(); need not be unique, though only the
+     *              first formula of a name can be found that way
+     * @return the index of the formula in the library
+     * @throws ArithmeticException if a literal does not fit in an int
+     * @throws RuntimeException if an unsupported operator is encountered or expr type is unknown.
+     *         A formula that fails leaves the library as it was.
+     */
+    public int add(String name, Expr expr) {
+        int start = codeLength;
+        int constantCount = constantIndexes.size();
+        int stringStart = stringsLength;
+        newVariables.clear();
+        newStrings.clear();
+        int maxStack;
+        int nameOffset;
+        try {
+            maxStack = emit(expr);
+            nameOffset = string(name);
+        } catch (RuntimeException e) {
+            rollback(start, constantCount, stringStart);
+            throw e;
+        }
+
+        if (4 * formulaCount + 4 > formulas.length) {
+            formulas = Arrays.copyOf(formulas, formulas.length * 2);
+        }
+        int entry = 4 * formulaCount;
+        formulas[entry] = start;
+        formulas[entry + 1] = codeLength - start;
+        formulas[entry + 2] = maxStack;
+        formulas[entry + 3] = nameOffset;
+        return formulaCount++;
+    }
+
+    /**
+     * Leaves nothing of a formula that failed: drops its code and the constants, variables and
+     * strings it added to the pools (they were appended at the end, so only the counts go back)
+     */
+    private void rollback(int codeStart, int constantCount, int stringStart) {
+        codeLength = codeStart;
+        for (int i = constantIndexes.size() - 1; i >= constantCount; i--) {
+            constantIndexes.remove(constants[i]);
+        }
+        for (String variable : newVariables) {
+            variableIndexes.remove(variable);
+        }
+        for (String string : newStrings) {
+            stringOffsets.remove(string);
+        }
+        stringsLength = stringStart;
+    }
+
+    /**
+     * @return number of formulas added so far
+     */
+    public int getFormulaCount() {
+        return formulaCount;
+    }
+
+    /**
+     * Writes the library to a file, replacing it if it exists
+     */
+    public void write(Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            writeTo(out);
+        }
+    }
+
+    /**
+     * Writes the library to the stream, which is not closed
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        int constantCount = constantIndexes.size();
+        int variableCount = variableIndexes.size();
+        long formulaTable = HEADER_SIZE;
+        long constantPool = formulaTable + (long) formulaCount * FORMULA_ENTRY_SIZE;
+        long variableTable = constantPool + 4L * constantCount;
+        long stringSection = variableTable + 4L * variableCount;
+        long codeSection = stringSection + stringsLength;
+        long fileLength = codeSection + codeLength;
+        if (fileLength > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Library too large: " + fileLength + " bytes");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putShort((short) MAJOR_VERSION);
+        header.putShort((short) MINOR_VERSION);
+        header.putInt(formulaCount);
+        header.putInt(constantCount);
+        header.putInt(variableCount);
+        header.putInt((int) formulaTable);
+        header.putInt((int) constantPool);
+        header.putInt((int) variableTable);
+        header.putInt((int) stringSection);
+        header.putInt((int) codeSection);
+        header.putInt((int) fileLength);
+        out.write(header.array());
+
+        writeInts(out, formulas, 4 * formulaCount);
+        writeInts(out, constants, constantCount);
+        writeInts(out, variables, variableCount);
+        out.write(strings, 0, stringsLength);
+        out.write(code, 0, codeLength);
+        out.flush();
+    }
+
+    private static void writeInts(OutputStream out, int[] values, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            if (!buffer.hasRemaining()) {
+                out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            buffer.putInt(values[i]);
+        }
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    /**
+     * Appends the postfix code of expr, walking the tree with an explicit stack so any depth works
+     * @return the deepest the operand stack gets while running it
+     */
+    private int emit(Expr root) {
+        int top = 0;
+        int depth = 0;
+        int maxStack = 0;
+        pending[top] = root;
+        expanded[top++] = false;
+
+        while (top > 0) {
+            Expr expr = pending[--top];
+            boolean childrenDone = expanded[top];
+            pending[top] = null;
+            if (top + 3 > pending.length) {
+                pending = Arrays.copyOf(pending, pending.length * 2);
+                expanded = Arrays.copyOf(expanded, expanded.length * 2);
+            }
+
+            if (expr instanceof NumberExpr) {
+                writeIndexed(CONST, constant(((NumberExpr) expr).getValue()));
+                maxStack = Math.max(maxStack, ++depth);
+            } else if (expr instanceof VariableExpr) {
+                writeIndexed(LOAD, variable(((VariableExpr) expr).getName()));
+                maxStack = Math.max(maxStack, ++depth);
+            } else if (expr instanceof UnaryExpr) {
+                UnaryExpr u = (UnaryExpr) expr;
+                if (!childrenDone) {
+                    pending[top] = expr;
+                    expanded[top++] = true;
+                    pending[top] = u.getRight();
+                    expanded[top++] = false;
+                    continue;
+                }
+                switch (u.getOperator().getType()) {
+                    case MINUS:
+                        writeByte(NEG);
+                        break;
+                    default:
+                        throw new RuntimeException("Unsupported unary operator: " + u.getOperator().getLexeme());
+                }
+            } else if (expr instanceof BinaryExpr) {
+                BinaryExpr b = (BinaryExpr) expr;
+                if (!childrenDone) {
+                    pending[top] = expr;
+                    expanded[top++] = true;
+                    pending[top] = b.getRight();
+                    expanded[top++] = false;
+                    pending[top] = b.getLeft();
+                    expanded[top++] = false;
+                    continue;
+                }
+                switch (b.getOperator().getType()) {
+                    case PLUS:
+                        writeByte(ADD);
+                        break;
+                    case MINUS:
+                        writeByte(SUB);
+                        break;
+                    case STAR:
+                        writeByte(MUL);
+                        break;
+                    case SLASH:
+                        writeByte(DIV);
+                        break;
+                    default:
+                        throw new RuntimeException("Unsupported binary operator: " + b.getOperator().getLexeme());
+                }
+                depth--;    // two operands in, one result out
+            } else {
+                throw new RuntimeException("Unknown expression: " + expr.getClass().getSimpleName());
+            }
+        }
+        return maxStack;
+    }
+
+    private int constant(int value) {
+        Integer index = constantIndexes.get(value);
+        if (index == null) {
+            index = constantIndexes.size();
+            if (index == constants.length) {
+                constants = Arrays.copyOf(constants, index * 2);
+            }
+            constants[index] = value;
+            constantIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    private int variable(String name) {
+        Integer index = variableIndexes.get(name);
+        if (index == null) {
+            index = variableIndexes.size();
+            if (index == variables.length) {
+                variables = Arrays.copyOf(variables, index * 2);
+            }
+            variables[index] = string(name);
+            variableIndexes.put(name, index);
+            newVariables.add(name);
+        }
+        return index;
+    }
+
+    /**
+     * @return offset of the name in the string section, each distinct name is stored once
+     */
+    private int string(String name) {
+        Integer offset = stringOffsets.get(name);
+        if (offset != null) {
+            return offset;
+        }
+        byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length > 0xFFFF) {
+            throw new IllegalArgumentException("Name longer than 65535 bytes: " + name.substring(0, 32) + "...");
+        }
+        if (stringsLength + 2 + utf8.length > strings.length) {
+            strings = Arrays.copyOf(strings, Math.max(strings.length * 2, stringsLength + 2 + utf8.length));
+        }
+        offset = stringsLength;
+        strings[stringsLength++] = (byte) utf8.length;
+        strings[stringsLength++] = (byte) (utf8.length >>> 8);
+        System.arraycopy(utf8, 0, strings, stringsLength, utf8.length);
+        stringsLength += utf8.length;
+        stringOffsets.put(name, offset);
+        newStrings.add(name);
+        return offset;
+    }
+
+    /**
+     * Writes an opcode followed by its index as an unsigned LEB128 varint
+     */
+    private void writeIndexed(byte opcode, int index) {
+        writeByte(opcode);
+        while ((index & ~0x7F) != 0) {
+            writeByte((byte) (index & 0x7F | 0x80));
+            index >>>= 7;
+        }
+        writeByte((byte) index);
+    }
+
+    private void writeByte(byte value) {
+        if (codeLength == code.length) {
+            code = Arrays.copyOf(code, codeLength * 2);
+        }
+        code[codeLength++] = value;
+    }
+
+    /**
+     * Compiles a text file of formulas into a library, see the class comment for the input format
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java mini_expr_compiler.library.FormulaLibraryWriter <formulas.txt> <library>");
+            System.exit(2);
+        }
+        FormulaLibraryWriter writer = new FormulaLibraryWriter();
+        int lineNumber = 0;
+        int errors = 0;
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                int eq = line.indexOf('=');
+                String name = eq >= 0 ? line.substring(0, eq).trim() : String.valueOf(lineNumber);
+                String source = eq >= 0 ? line.substring(eq + 1) : line;
+                try {
+                    writer.add(name, new Parser(new Lexer(source)).parse());
+                } catch (ParseException | RuntimeException e) {
+                    System.err.println("error line " + lineNumber + ": " + e.getMessage());
+                    errors++;
+                }
+            }
+        }
+        writer.write(Paths.get(args[1]));
+        System.err.println("Wrote " + writer.getFormulaCount() + " formulas, " + errors + " errors");
+        if (errors > 0) {
+            System.exit(1);
+        }
+    }
+}
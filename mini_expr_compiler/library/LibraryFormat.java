@@ -0,0 +1,63 @@
+package mini_expr_compiler.library;
+
+/**
+ * Layout of a formula library file, written by FormulaLibraryWriter and read by FormulaLibrary.
+ *
+ * All numbers are little-endian. Offsets are from the start of the file, so a file is at most 2 GB.
+ *
+ *   header (HEADER_SIZE bytes)
+ *     0  int  MAGIC
+ *     4  u16  major version, readers reject any other major version
+ *     6  u16  minor version, raised for additions that older readers can ignore (e.g. new sections)
+ *     8  int  formula count
+ *    12  int  constant count
+ *    16  int  variable count
+ *    20  int  offset of the formula table
+ *    24  int  offset of the constant pool
+ *    28  int  offset of the variable table
+ *    32  int  offset of the string section
+ *    36  int  offset of the code section
+ *    40  int  file length
+ *   formula table: per formula FORMULA_ENTRY_SIZE bytes
+ *     int code start (in the code section), int code length, int max stack, int name (in the string section)
+ *   constant pool: one int per distinct literal
+ *   variable table: one int per distinct variable, the offset of its name in the string section
+ *   string section: u16 length followed by that many bytes of UTF-8, per name
+ *   code section: each formula is a postfix stream of one-byte opcodes; CONST and LOAD are followed
+ *     by an index into the constant pool / variable table as an unsigned LEB128 varint (one byte
+ *     below 128)
+ */
+final class LibraryFormat {
+
+    static final int MAGIC = 0x4C58454D;     // "MEXL" in file byte order
+    static final int MAJOR_VERSION = 1;
+    static final int MINOR_VERSION = 0;
+
+    static final int HEADER_SIZE = 44;
+    static final int FORMULA_ENTRY_SIZE = 16;
+
+    // Header fields
+    static final int MAJOR = 4;
+    static final int MINOR = 6;
+    static final int FORMULA_COUNT = 8;
+    static final int CONSTANT_COUNT = 12;
+    static final int VARIABLE_COUNT = 16;
+    static final int FORMULA_TABLE = 20;
+    static final int CONSTANT_POOL = 24;
+    static final int VARIABLE_TABLE = 28;
+    static final int STRINGS = 32;
+    static final int CODE = 36;
+    static final int FILE_LENGTH = 40;
+
+    // Opcodes
+    static final byte CONST = 0;    // push constant pool entry
+    static final byte LOAD = 1;     // push the value of a variable
+    static final byte ADD = 2;      // a b -> a + b
+    static final byte SUB = 3;      // a b -> a - b
+    static final byte MUL = 4;      // a b -> a * b
+    static final byte DIV = 5;      // a b -> a / b, ArithmeticException if b == 0
+    static final byte NEG = 6;      // a -> -a
+
+    private LibraryFormat() {
+    }
+}
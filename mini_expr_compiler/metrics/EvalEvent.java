@@ -0,0 +1,46 @@
+package mini_expr_compiler.metrics;
+
+import mini_expr_compiler.ast.Expr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for one top-level Evaluator.evaluate() call (not for the recursive calls
+ * inside it). Only emitted when a recording enables it; by default only evaluations of 1 ms or
+ * more are recorded.
+ */
+@Name("mini_expr_compiler.Eval")
+@Label("Eval")
+@Category({"Mini Expression Compiler"})
+@Description("Evaluating one AST")
+@StackTrace(false)
+@Threshold("1 ms")
+public class EvalEvent extends Event {
+
+    @Label("Node Count")
+    @Description("Nodes in the evaluated AST")
+    public int nodeCount;
+
+    @Label("Tree Depth")
+    @Description("Depth of the evaluated AST (a single number is 1)")
+    public int treeDepth;
+
+    @Label("Outcome")
+    @Description("OK, or the simple name of the exception that ended the evaluation")
+    public String outcome;
+
+    /**
+     * Fills nodeCount and treeDepth from the evaluated tree
+     */
+    public void setTree(Expr ast) {
+        TreeStats stats = new TreeStats(ast);
+        nodeCount = stats.nodes;
+        treeDepth = stats.depth;
+    }
+}
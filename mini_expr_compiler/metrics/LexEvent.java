@@ -0,0 +1,34 @@
+package mini_expr_compiler.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for one Lexer run, from its first token to EOF or a lexical error.
+ * Only emitted when a recording enables it; by default only runs of 1 ms or more are recorded.
+ */
+@Name("mini_expr_compiler.Lex")
+@Label("Lex")
+@Category({"Mini Expression Compiler"})
+@Description("Tokenizing one input")
+@StackTrace(false)
+@Threshold("1 ms")
+public class LexEvent extends Event {
+
+    @Label("Input Length")
+    @Description("Characters scanned")
+    public long inputLength;
+
+    @Label("Token Count")
+    @Description("Tokens produced, including EOF")
+    public int tokenCount;
+
+    @Label("Outcome")
+    @Description("OK, or the simple name of the exception that ended the run")
+    public String outcome;
+}
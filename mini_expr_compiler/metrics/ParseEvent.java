@@ -0,0 +1,49 @@
+package mini_expr_compiler.metrics;
+
+import mini_expr_compiler.ast.Expr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for one Parser.parse() call.
+ * Only emitted when a recording enables it; by default only parses of 1 ms or more are recorded.
+ */
+@Name("mini_expr_compiler.Parse")
+@Label("Parse")
+@Category({"Mini Expression Compiler"})
+@Description("Parsing one expression into an AST")
+@StackTrace(false)
+@Threshold("1 ms")
+public class ParseEvent extends Event {
+
+    @Label("Token Count")
+    @Description("Tokens read, including the one the parse ended at")
+    public int tokenCount;
+
+    @Label("Node Count")
+    @Description("Nodes in the resulting AST, 0 if the parse failed")
+    public int nodeCount;
+
+    @Label("Tree Depth")
+    @Description("Depth of the resulting AST (a single number is 1), 0 if the parse failed")
+    public int treeDepth;
+
+    @Label("Outcome")
+    @Description("OK, or the simple name of the exception that ended the parse")
+    public String outcome;
+
+    /**
+     * Fills nodeCount and treeDepth from the parsed tree
+     */
+    public void setTree(Expr ast) {
+        TreeStats stats = new TreeStats(ast);
+        nodeCount = stats.nodes;
+        treeDepth = stats.depth;
+    }
+}
@@ -0,0 +1,12 @@
+package mini_expr_compiler.metrics;
+
+/**
+ * The pipeline phases PipelineMetrics keeps latency histograms for
+ */
+public enum Phase {
+    LEX,
+    PARSE,
+    OPTIMIZE,
+    EVAL,
+    PRINT
+}
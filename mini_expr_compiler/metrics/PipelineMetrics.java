@@ -0,0 +1,353 @@
+package mini_expr_compiler.metrics;
+
+import mini_expr_compiler.ast.*;
+import mini_expr_compiler.eval.*;
+import mini_expr_compiler.lexer1.*;
+import mini_expr_compiler.optimizer.*;
+import mini_expr_compiler.parser.*;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.text.ParseException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Instrumented entry points for the pipeline phases, plus the metrics they collect:
+ * - a latency histogram per phase (lex, parse, optimize, eval, print)
+ * - bytes allocated per call of each phase, from the thread's allocation counter (ThreadMXBean)
+ * - counters for tokens produced and AST nodes parsed
+ * - failures by phase and exception type (lexical RuntimeException, ParseException,
+ *   ArithmeticException, ...)
+ *
+ * Callers run a phase through this class instead of directly:
+ *
+ *   List<Token> tokens = metrics.lex(source);
+ *   Expr ast = metrics.parse(tokens);
+ *   int result = metrics.evaluate(evaluator, ast);
+ *
+ * When disabled each method only reads one volatile flag and calls the phase directly. Metrics
+ * are taken around the whole call, never per node, so the Evaluator itself is not touched.
+ *
+ * Metrics can be read as text with dump() or over JMX after register(). All methods are thread-safe.
+ */
+public class PipelineMetrics implements PipelineMetricsMXBean {
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private volatile boolean enabled;
+
+    private final Map<Phase, LatencyHistogram> latencies = new EnumMap<>(Phase.class);
+    private final Map<Phase, LongAdder> allocatedBytes = new EnumMap<>(Phase.class);
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    public PipelineMetrics(boolean enabled) {
+        this.enabled = enabled;
+        for (Phase phase : Phase.values()) {
+            latencies.put(phase, new LatencyHistogram());
+            allocatedBytes.put(phase, new LongAdder());
+        }
+    }
+
+    /**
+     * Makes the metrics visible over JMX under mini_expr_compiler:type=PipelineMetrics,name="<name>"
+     */
+    public void register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("mini_expr_compiler:type=PipelineMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // Instrumented phases
+
+    /**
+     * Lexer.tokenize() on source
+     */
+    public List<Token> lex(CharSequence source) {
+        if (!enabled) {
+            return new Lexer(source).tokenize();
+        }
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        try {
+            List<Token> result = new Lexer(source).tokenize();
+            tokens.add(result.size() - 1);      // not counting EOF
+            return result;
+        } catch (RuntimeException e) {
+            error(Phase.LEX, e);
+            throw e;
+        } finally {
+            record(Phase.LEX, start, bytes);
+        }
+    }
+
+    /**
+     * IterativeParser.parse() on tokens
+     */
+    public Expr parse(List<Token> tokens) throws ParseException {
+        if (!enabled) {
+            return new IterativeParser(tokens).parse();
+        }
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        try {
+            Expr result = new IterativeParser(tokens).parse();
+            record(Phase.PARSE, start, bytes);
+            nodes.add(new TreeStats(result).nodes);    // counted outside the timed part
+            return result;
+        } catch (ParseException | RuntimeException e) {
+            record(Phase.PARSE, start, bytes);
+            error(Phase.PARSE, e);
+            throw e;
+        }
+    }
+
+    /**
+     * optimizer.optimize(ast)
+     */
+    public Expr optimize(Optimizer optimizer, Expr ast) {
+        if (!enabled) {
+            return optimizer.optimize(ast);
+        }
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        try {
+            return optimizer.optimize(ast);
+        } catch (RuntimeException e) {
+            error(Phase.OPTIMIZE, e);
+            throw e;
+        } finally {
+            record(Phase.OPTIMIZE, start, bytes);
+        }
+    }
+
+    /**
+     * evaluator.evaluate(ast)
+     */
+    public int evaluate(Evaluator evaluator, Expr ast) {
+        if (!enabled) {
+            return evaluator.evaluate(ast);
+        }
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        try {
+            return evaluator.evaluate(ast);
+        } catch (RuntimeException e) {
+            error(Phase.EVAL, e);
+            throw e;
+        } finally {
+            record(Phase.EVAL, start, bytes);
+        }
+    }
+
+    /**
+     * evaluator.apply(ast), for evaluators of any NumericMode
+     */
+    public <T> T evaluate(Function<Expr, T> evaluator, Expr ast) {
+        if (!enabled) {
+            return evaluator.apply(ast);
+        }
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        try {
+            return evaluator.apply(ast);
+        } catch (RuntimeException e) {
+            error(Phase.EVAL, e);
+            throw e;
+        } finally {
+            record(Phase.EVAL, start, bytes);
+        }
+    }
+
+    /**
+     * printer.print(ast)
+     */
+    public String print(AstPrinter printer, Expr ast) {
+        return print(printer, ast, -1);
+    }
+
+    /**
+     * printer.print(ast, maxDepth)
+     */
+    public String print(AstPrinter printer, Expr ast, int maxDepth) {
+        if (!enabled) {
+            return printer.print(ast, maxDepth);
+        }
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        try {
+            return printer.print(ast, maxDepth);
+        } catch (RuntimeException e) {
+            error(Phase.PRINT, e);
+            throw e;
+        } finally {
+            record(Phase.PRINT, start, bytes);
+        }
+    }
+
+    // Reading the metrics
+
+    public LatencyHistogram getLatency(Phase phase) {
+        return latencies.get(phase);
+    }
+
+    @Override
+    public Map<String, Long> getCalls() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Phase phase : Phase.values()) {
+            result.put(phase.name(), latencies.get(phase).getCount());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getMeanNanos() {
+        Map<String, Double> result = new TreeMap<>();
+        for (Phase phase : Phase.values()) {
+            result.put(phase.name(), latencies.get(phase).getMean());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getP50Nanos() {
+        return percentiles(50);
+    }
+
+    @Override
+    public Map<String, Long> getP99Nanos() {
+        return percentiles(99);
+    }
+
+    @Override
+    public Map<String, Long> getMaxNanos() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Phase phase : Phase.values()) {
+            result.put(phase.name(), latencies.get(phase).getMax());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getAllocatedBytesPerCall() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Phase phase : Phase.values()) {
+            result.put(phase.name(), bytesPerCall(phase));
+        }
+        return result;
+    }
+
+    @Override
+    public long getTokens() {
+        return tokens.sum();
+    }
+
+    @Override
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        Map<String, Long> result = new TreeMap<>();
+        errors.forEach((key, count) -> result.put(key, count.sum()));
+        return result;
+    }
+
+    /**
+     * @return all metrics as a plain-text table
+     */
+    @Override
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-9s %10s %12s %12s %12s %12s %12s%n", "phase", "calls", "mean ns", "p50 ns", "p99 ns", "max ns", "bytes/call"));
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram h = latencies.get(phase);
+            sb.append(String.format("%-9s %10d %12.0f %12d %12d %12d %12d%n", phase.name().toLowerCase(), h.getCount(), h.getMean(),
+                    h.getPercentile(50), h.getPercentile(99), h.getMax(), bytesPerCall(phase)));
+        }
+        sb.append("tokens ").append(getTokens()).append(", nodes ").append(getNodes()).append('\n');
+        Map<String, Long> errorCounts = getErrors();
+        sb.append("errors");
+        if (errorCounts.isEmpty()) {
+            sb.append(" none");
+        }
+        errorCounts.forEach((key, count) -> sb.append(' ').append(key).append('=').append(count));
+        sb.append('\n');
+        return sb.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (Phase phase : Phase.values()) {
+            latencies.get(phase).reset();
+            allocatedBytes.get(phase).reset();
+        }
+        tokens.reset();
+        nodes.reset();
+        errors.clear();
+    }
+
+    private Map<String, Long> percentiles(double percentile) {
+        Map<String, Long> result = new TreeMap<>();
+        for (Phase phase : Phase.values()) {
+            result.put(phase.name(), latencies.get(phase).getPercentile(percentile));
+        }
+        return result;
+    }
+
+    private long bytesPerCall(Phase phase) {
+        long calls = latencies.get(phase).getCount();
+        return calls == 0 ? 0 : allocatedBytes.get(phase).sum() / calls;
+    }
+
+    private void record(Phase phase, long start, long bytesBefore) {
+        latencies.get(phase).record(System.nanoTime() - start);
+        if (bytesBefore >= 0) {
+            allocatedBytes.get(phase).add(allocatedBytes() - bytesBefore);
+        }
+    }
+
+    private void error(Phase phase, Exception e) {
+        errors.computeIfAbsent(phase.name() + " " + e.getClass().getSimpleName(), key -> new LongAdder()).increment();
+    }
+
+    /**
+     * @return bytes allocated so far by the current thread, -1 if the JVM cannot tell
+     */
+    private static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        if (!threads.isThreadAllocatedMemoryEnabled()) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }
+        return threads;
+    }
+}
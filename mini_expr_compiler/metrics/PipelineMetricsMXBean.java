@@ -0,0 +1,38 @@
+package mini_expr_compiler.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of PipelineMetrics. Per-phase values are maps keyed by phase name (LEX, PARSE, ...).
+ */
+public interface PipelineMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    Map<String, Long> getCalls();
+
+    Map<String, Double> getMeanNanos();
+
+    Map<String, Long> getP50Nanos();
+
+    Map<String, Long> getP99Nanos();
+
+    Map<String, Long> getMaxNanos();
+
+    Map<String, Long> getAllocatedBytesPerCall();
+
+    long getTokens();
+
+    long getNodes();
+
+    /**
+     * @return failures keyed by "phase exception", e.g. "PARSE ParseException"
+     */
+    Map<String, Long> getErrors();
+
+    String dump();
+
+    void reset();
+}
@@ -0,0 +1,47 @@
+package mini_expr_compiler.metrics;
+
+import mini_expr_compiler.ast.*;
+
+import java.util.Arrays;
+
+/**
+ * Node count and depth of an AST, for the Flight Recorder events. Walks the tree with an explicit
+ * stack, so it works on trees too deep for recursion.
+ */
+final class TreeStats {
+
+    final int nodes;
+    final int depth;
+
+    TreeStats(Expr root) {
+        Expr[] stack = new Expr[64];
+        int[] depths = new int[64];
+        int top = 0;
+        int count = 0;
+        int max = 0;
+        stack[top] = root;
+        depths[top++] = 1;
+        while (top > 0) {
+            Expr expr = stack[--top];
+            int d = depths[top];
+            stack[top] = null;
+            count++;
+            max = Math.max(max, d);
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+                depths = Arrays.copyOf(depths, depths.length * 2);
+            }
+            if (expr instanceof UnaryExpr) {
+                stack[top] = ((UnaryExpr) expr).getRight();
+                depths[top++] = d + 1;
+            } else if (expr instanceof BinaryExpr) {
+                stack[top] = ((BinaryExpr) expr).getLeft();
+                depths[top++] = d + 1;
+                stack[top] = ((BinaryExpr) expr).getRight();
+                depths[top++] = d + 1;
+            }
+        }
+        this.nodes = count;
+        this.depth = max;
+    }
+}
@@ -0,0 +1,255 @@
+package mini_expr_compiler.optimizer;
+
+import mini_expr_compiler.ast.*;
+import mini_expr_compiler.lexer1.*;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Rewrites an Expr tree into a smaller tree that evaluates to the same result.
+ * Runs between Parser.parse() and any evaluator or compiler backend.
+ *
+ * The tree is rewritten bottom-up with these rules:
+ * - constant folding:      2 * 3 + 1  ->  7,   -(5)  ->  -5
+ * - double negation:       -(-x)      ->  x
+ * - identities:            x + 0, 0 + x, x - 0, x * 1, 1 * x, x / 1  ->  x
+ *                          0 - x, x * -1, -1 * x, x / -1             ->  -x
+ * - annihilation:          x * 0, 0 * x  ->  0   (only if x cannot throw, see below)
+ * - constant reassociation: (x + 2) + 3  ->  x + 5,   (x * 2) * 3  ->  x * 6
+ *
+ * All rules hold under wrapping int arithmetic, including Integer.MIN_VALUE
+ * (for example MIN_VALUE / -1 and -MIN_VALUE are both MIN_VALUE). That is the default
+ * Evaluator's semantics; with the other NumericModes evaluate the unoptimized tree, since a fold
+ * may hide an overflow they would report or widen. Literals too large for an int are never folded,
+ * and since the int evaluators reject them, a subtree containing one is not dropped by x * 0 either.
+ *
+ * Division by zero is never optimized away: a division whose divisor is 0 is kept as it is
+ * (so 8 / 0 still fails at runtime), and a subtree containing a division that might fail is
+ * not dropped by x * 0. The same goes for variables, since an unbound one fails with
+ * "Undefined variable": a variable is only dropped if its name is in the set of bound names
+ * passed to the constructor (empty by default).
+ *
+ * Subtrees that do not change are reused, not copied. The original tree is never modified.
+ */
+public class Optimizer {
+
+    private final Set<String> boundNames;
+    private int removedNodes = 0;
+
+    /**
+     * Creates an optimizer that treats every variable as possibly unbound
+     */
+    public Optimizer() {
+        this(Collections.emptySet());
+    }
+
+    /**
+     * @param boundNames  names of the variables that will be bound when the result is evaluated,
+     *                    so x * 0 may drop them
+     */
+    public Optimizer(Set<String> boundNames) {
+        this.boundNames = boundNames;
+    }
+
+    /**
+     * Optimizes the expression tree
+     * @param expr  root of the expression tree (cannot be null)
+     * @return the optimized tree (may be the same object if nothing changed)
+     */
+    public Expr optimize(Expr expr) {
+        int before = countNodes(expr);
+        Expr result = rewrite(expr).expr;
+        removedNodes = before - countNodes(result);
+        return result;
+    }
+
+    /**
+     * @return how many nodes the last call to optimize() removed
+     */
+    public int getRemovedNodes() {
+        return removedNodes;
+    }
+
+    /**
+     * @return number of nodes in the tree
+     */
+    public static int countNodes(Expr expr) {
+        if (expr instanceof UnaryExpr) {
+            return 1 + countNodes(((UnaryExpr) expr).getRight());
+        }
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            return 1 + countNodes(b.getLeft()) + countNodes(b.getRight());
+        }
+        return 1;
+    }
+
+    /**
+     * A rewritten subtree plus whether evaluating it could throw (ArithmeticException or an undefined variable)
+     */
+    private static final class Result {
+        final Expr expr;
+        final boolean mayThrow;
+
+        Result(Expr expr, boolean mayThrow) {
+            this.expr = expr;
+            this.mayThrow = mayThrow;
+        }
+    }
+
+    private Result rewrite(Expr expr) {
+        if (expr instanceof UnaryExpr) {
+            UnaryExpr u = (UnaryExpr) expr;
+            Result right = rewrite(u.getRight());
+            if (u.getOperator().getType() != TokenType.MINUS) {
+                return new Result(u.getRight() == right.expr ? u : new UnaryExpr(u.getOperator(), right.expr), right.mayThrow);
+            }
+            return new Result(negate(u, u.getOperator(), right.expr), right.mayThrow);
+        }
+
+        if (expr instanceof BinaryExpr) {
+            return rewriteBinary((BinaryExpr) expr);
+        }
+
+        if (expr instanceof NumberExpr) {
+            // A literal too large for an int fails in the int evaluators, so it must not be dropped by x * 0
+            return new Result(expr, !((NumberExpr) expr).isInt());
+        }
+
+        if (expr instanceof VariableExpr) {
+            // Looking up an unbound variable fails, so only a bound one may be dropped
+            return new Result(expr, !boundNames.contains(((VariableExpr) expr).getName()));
+        }
+
+        // Anything unknown stays as it is
+        return new Result(expr, false);
+    }
+
+    private Result rewriteBinary(BinaryExpr b) {
+        Result leftResult = rewrite(b.getLeft());
+        Result rightResult = rewrite(b.getRight());
+        Expr left = leftResult.expr;
+        Expr right = rightResult.expr;
+        Token op = b.getOperator();
+        boolean mayThrow = leftResult.mayThrow || rightResult.mayThrow;
+
+        Integer l = constant(left);
+        Integer r = constant(right);
+
+        switch (op.getType()) {
+            case PLUS:
+                if (l != null && r != null) {
+                    return new Result(new NumberExpr(l + r), false);
+                }
+                if (r != null && r == 0) {
+                    return new Result(left, mayThrow);
+                }
+                if (l != null && l == 0) {
+                    return new Result(right, mayThrow);
+                }
+                if (r != null && isConstantOperation(left, TokenType.PLUS)) {
+                    // (x + c1) + c2  ->  x + (c1 + c2)
+                    BinaryExpr inner = (BinaryExpr) left;
+                    return new Result(new BinaryExpr(inner.getLeft(), op, new NumberExpr(constant(inner.getRight()) + r)), mayThrow);
+                }
+                break;
+            case MINUS:
+                if (l != null && r != null) {
+                    return new Result(new NumberExpr(l - r), false);
+                }
+                if (r != null && r == 0) {
+                    return new Result(left, mayThrow);
+                }
+                if (l != null && l == 0) {
+                    return new Result(negate(null, op, right), mayThrow);
+                }
+                break;
+            case STAR:
+                if (l != null && r != null) {
+                    return new Result(new NumberExpr(l * r), false);
+                }
+                if ((r != null && r == 0 && !leftResult.mayThrow) || (l != null && l == 0 && !rightResult.mayThrow)) {
+                    return new Result(new NumberExpr(0), false);
+                }
+                if (r != null && r == 1) {
+                    return new Result(left, mayThrow);
+                }
+                if (l != null && l == 1) {
+                    return new Result(right, mayThrow);
+                }
+                if (r != null && r == -1) {
+                    return new Result(negate(null, op, left), mayThrow);
+                }
+                if (l != null && l == -1) {
+                    return new Result(negate(null, op, right), mayThrow);
+                }
+                if (r != null && isConstantOperation(left, TokenType.STAR)) {
+                    // (x * c1) * c2  ->  x * (c1 * c2)
+                    BinaryExpr inner = (BinaryExpr) left;
+                    return new Result(new BinaryExpr(inner.getLeft(), op, new NumberExpr(constant(inner.getRight()) * r)), mayThrow);
+                }
+                break;
+            case SLASH:
+                if (r != null && r == 0) {
+                    mayThrow = true;
+                    break;      // must still fail at runtime
+                }
+                if (l != null && r != null) {
+                    return new Result(new NumberExpr(l / r), false);
+                }
+                if (r != null && r == 1) {
+                    return new Result(left, mayThrow);
+                }
+                if (r != null && r == -1) {
+                    return new Result(negate(null, op, left), mayThrow);
+                }
+                // Only a division by a non-zero constant is known to be safe
+                mayThrow = mayThrow || r == null;
+                break;
+            default:
+                break;
+        }
+
+        if (left == b.getLeft() && right == b.getRight()) {
+            return new Result(b, mayThrow);
+        }
+        return new Result(new BinaryExpr(left, op, right), mayThrow);
+    }
+
+    /**
+     * Builds -operand, folding constants and cancelling double negation
+     * @param original  existing UnaryExpr to reuse if nothing changes, or null
+     * @param at        token whose position the new MINUS token takes
+     */
+    private Expr negate(UnaryExpr original, Token at, Expr operand) {
+        if (operand instanceof NumberExpr && ((NumberExpr) operand).isInt()) {
+            return new NumberExpr(-((NumberExpr) operand).getValue());
+        }
+        if (operand instanceof UnaryExpr && ((UnaryExpr) operand).getOperator().getType() == TokenType.MINUS) {
+            return ((UnaryExpr) operand).getRight();
+        }
+        if (original != null && original.getRight() == operand) {
+            return original;
+        }
+        Token minus = at.getType() == TokenType.MINUS ? at : new Token(TokenType.MINUS, "-", at.getPosition());
+        return new UnaryExpr(minus, operand);
+    }
+
+    /**
+     * @return true if expr is (something op constant)
+     */
+    private static boolean isConstantOperation(Expr expr, TokenType type) {
+        if (!(expr instanceof BinaryExpr)) {
+            return false;
+        }
+        BinaryExpr b = (BinaryExpr) expr;
+        return b.getOperator().getType() == type && constant(b.getRight()) != null;
+    }
+
+    /**
+     * @return the value of an int literal, null for anything else
+     */
+    private static Integer constant(Expr expr) {
+        return expr instanceof NumberExpr && ((NumberExpr) expr).isInt() ? ((NumberExpr) expr).getValue() : null;
+    }
+}
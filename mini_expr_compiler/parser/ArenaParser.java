@@ -0,0 +1,195 @@
+package mini_expr_compiler.parser;
+
+import mini_expr_compiler.lexer1.*;
+import mini_expr_compiler.ast.*;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses straight into an AstArena instead of building Expr objects.
+ *
+ * Works like IterativeParser (operator precedence with explicit stacks, no recursion), but the
+ * operand stack holds arena node indexes. Nodes are added in post-order, so the new expression
+ * occupies a contiguous range of the arena ending at the returned root.
+ *
+ * Accepts the same language, with the same ParseException messages and offsets, as Parser.
+ */
+public class ArenaParser {
+
+    // Kinds of entries on the operator stack
+    private static final byte NEGATE = 0;
+    private static final byte ADDITIVE = 1;         // + -
+    private static final byte MULTIPLICATIVE = 2;   // * /
+    private static final byte OPEN_PAREN = 3;
+
+    private final TokenSource tokens;
+    private final AstArena arena;
+    private Token lookahead;    // current token, not consumed yet
+    private Token previous;     // most recently consumed token
+    private int current = 0;    // index of current token
+
+    private int[] operands = new int[16];
+    private int operandCount = 0;
+    private byte[] operatorKinds = new byte[16];
+    private int[] operatorOps = new int[16];        // AstArena opcode of each pending operator
+    private int operatorCount = 0;
+    private int openParens = 0;
+
+    public ArenaParser(List<Token> tokens, AstArena arena) {
+        this(TokenSource.of(tokens), arena);
+    }
+
+    /**
+     * @param tokens  where to read tokens from
+     * @param arena   where to add the nodes; earlier contents are left untouched
+     */
+    public ArenaParser(TokenSource tokens, AstArena arena) {
+        this.tokens = tokens;
+        this.arena = arena;
+    }
+
+    /**
+     * @return the index of the root node in the arena
+     * @throws ArithmeticException for a literal too large for an int (the arena stores int values)
+     */
+    public int parse() throws ParseException {
+        lookahead = tokens.next();
+
+        while (true) {
+            // Expecting an operand
+            Token t = lookahead;
+            switch (t.getType()) {
+                case MINUS:
+                    advance();
+                    pushOperator(NEGATE, AstArena.NEGATE);
+                    continue;
+                case LPAREN:
+                    advance();
+                    pushOperator(OPEN_PAREN, -1);
+                    openParens++;
+                    continue;
+                case NUMBER:
+                    if (t.getNumericValue() == null) {
+                        throw new ArithmeticException("Number " + t.getLexeme() + " does not fit in int");
+                    }
+                    advance();
+                    pushOperand(arena.number(t.getNumericValue()));
+                    break;
+                case IDENTIFIER:
+                    advance();
+                    pushOperand(arena.variable(t.getLexeme()));
+                    break;
+                default:
+                    throw error("Unexpected Token '" + t.getLexeme() + " at position " + t.getPosition());
+            }
+            applyNegations();
+
+            // Expecting an operator
+            while (true) {
+                t = lookahead;
+                switch (t.getType()) {
+                    case PLUS:
+                        advance();
+                        reduceWhileAtLeast(ADDITIVE);
+                        pushOperator(ADDITIVE, AstArena.ADD);
+                        break;
+                    case MINUS:
+                        advance();
+                        reduceWhileAtLeast(ADDITIVE);
+                        pushOperator(ADDITIVE, AstArena.SUB);
+                        break;
+                    case STAR:
+                        advance();
+                        reduceWhileAtLeast(MULTIPLICATIVE);
+                        pushOperator(MULTIPLICATIVE, AstArena.MUL);
+                        break;
+                    case SLASH:
+                        advance();
+                        reduceWhileAtLeast(MULTIPLICATIVE);
+                        pushOperator(MULTIPLICATIVE, AstArena.DIV);
+                        break;
+                    case RPAREN:
+                        if (openParens == 0) {
+                            throw error("Unexpected token '" + t.getLexeme() + "' at position " + t.getPosition() + " after complete expression");
+                        }
+                        advance();
+                        reduceWhileAtLeast(ADDITIVE);
+                        operatorCount--;    // the matching '('
+                        openParens--;
+                        applyNegations();
+                        continue;           // still expecting an operator
+                    case EOF:
+                        if (openParens > 0) {
+                            throw error("Expected ')' to match '(' at starting position " + previous.getPosition());
+                        }
+                        reduceWhileAtLeast(ADDITIVE);
+                        return operands[0];
+                    default:
+                        if (openParens > 0) {
+                            throw error("Expected ')' to match '(' at starting position " + previous.getPosition());
+                        }
+                        throw error("Unexpected token '" + t.getLexeme() + "' at position " + t.getPosition() + " after complete expression");
+                }
+                break;      // a binary operator was pushed, expect an operand again
+            }
+        }
+    }
+
+    /**
+     * Pops binary operators whose precedence is at least minKind and adds their nodes.
+     * Stops at an open parenthesis.
+     */
+    private void reduceWhileAtLeast(byte minKind) {
+        while (operatorCount > 0) {
+            byte kind = operatorKinds[operatorCount - 1];
+            if (kind == OPEN_PAREN || kind < minKind) {
+                return;
+            }
+            int op = operatorOps[--operatorCount];
+            int right = operands[--operandCount];
+            operands[operandCount - 1] = arena.binary(op, operands[operandCount - 1], right);
+        }
+    }
+
+    /**
+     * Applies every unary minus directly in front of the factor that was just completed
+     */
+    private void applyNegations() {
+        while (operatorCount > 0 && operatorKinds[operatorCount - 1] == NEGATE) {
+            operatorCount--;
+            operands[operandCount - 1] = arena.negate(operands[operandCount - 1]);
+        }
+    }
+
+    private void pushOperand(int node) {
+        if (operandCount == operands.length) {
+            operands = Arrays.copyOf(operands, operandCount * 2);
+        }
+        operands[operandCount++] = node;
+    }
+
+    private void pushOperator(byte kind, int op) {
+        if (operatorCount == operatorKinds.length) {
+            operatorKinds = Arrays.copyOf(operatorKinds, operatorCount * 2);
+            operatorOps = Arrays.copyOf(operatorOps, operatorCount * 2);
+        }
+        operatorKinds[operatorCount] = kind;
+        operatorOps[operatorCount] = op;
+        operatorCount++;
+    }
+
+    /**
+     * Consumes the current token
+     */
+    private void advance() {
+        previous = lookahead;
+        lookahead = tokens.next();
+        current++;
+    }
+
+    // error handling, same offsets as Parser (source position of the current token)
+    private ParseException error(String message) {
+        return new ParseException(message, lookahead.getPosition());
+    }
+}
@@ -0,0 +1,50 @@
+package mini_expr_compiler.parser;
+
+/**
+ * One problem found in the source, as collected by Parser.parseRecovering() or IterativeParser.parseRecovering()
+ */
+public final class Diagnostic {
+
+    public enum Kind {
+        LEXICAL,    // a character that starts no token
+        SYNTAX      // tokens that do not fit the grammar
+    }
+
+    private final Kind kind;
+    private final int offset;
+    private final int length;
+    private final String message;
+
+    /**
+     * @param offset   where the problem starts in the source
+     * @param length   number of characters involved, 0 at the end of the input
+     * @param message  same text as the exception the Lexer or Parser would have thrown
+     */
+    public Diagnostic(Kind kind, int offset, int length, String message) {
+        this.kind = kind;
+        this.offset = offset;
+        this.length = length;
+        this.message = message;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return (kind == Kind.LEXICAL ? "Lexical Error" : "Syntax Error") + " at " + offset + ": " + message;
+    }
+}
@@ -0,0 +1,346 @@
+package mini_expr_compiler.parser;
+
+import mini_expr_compiler.lexer1.*;
+import mini_expr_compiler.ast.*;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parser for text that is edited a little at a time, as in an editor that re-submits the
+ * expression on every keystroke.
+ *
+ * It keeps the tokens (in an IncrementalLexer) and the tree of the last successful parse.
+ * edit(offset, deletedLength, inserted) re-lexes only the tokens around the edit and then parses
+ * the new tokens with the same grammar as Parser, but wherever the old tree has a subtree that
+ * starts at the current token and covers only unchanged tokens, that subtree (and its Expr) is
+ * taken over as it is instead of being parsed again:
+ *
+ *   factor      reuses a number, identifier, unary minus or parenthesized group
+ *   term        reuses a '*' '/' node as the start of the term
+ *   expression  reuses a '+' '-' node as the start of the expression, if the token after it is
+ *               unchanged too (otherwise its last term might now continue, as in a + b -> a + b * c)
+ *
+ * The old tree is walked with a cursor that only moves forward, so finding reusable subtrees costs
+ * about as much as the nodes that are rebuilt. Those are the nodes covering the edit plus their
+ * ancestors, so the time per keystroke depends on the size of the edit and the nesting around it,
+ * not on the length of the text. The exception are long flat chains like 1 + 2 + ... + n: they
+ * are left-deep trees, and an edit near their start has every '+' node above it as an ancestor.
+ *
+ * The resulting AST, and the ParseException messages and offsets, are the same as Parser's on
+ * the whole new text. Reused subtrees are shared with the previous AST, so the positions of the
+ * operator tokens inside them are the ones from the text they were parsed from; getTokens() has
+ * the current positions.
+ *
+ * If a parse fails, the tree of the last successful parse is kept and later edits are measured
+ * against it, so reuse continues once the text is valid again.
+ */
+public class IncrementalParser {
+
+    private final IncrementalLexer lexer;
+    private final ExprFactory factory;
+
+    private SyntaxNode tree;    // last successful parse, null if there was none
+
+    // Tokens of the current text that do not match the tree: the tree's tokens [damageStart, damageEndOld)
+    // were replaced by the current tokens [damageStart, damageEndNew). Before and after that range the
+    // tokens are the same (the ones after it shifted by damageEndNew - damageEndOld).
+    private int damageStart = Integer.MAX_VALUE;
+    private int damageEndOld = Integer.MAX_VALUE;
+    private int damageEndNew = Integer.MAX_VALUE;
+
+    // Cursor over the old tree: the nodes containing the last position looked at, with their start
+    private SyntaxNode[] path = new SyntaxNode[64];
+    private int[] pathStarts = new int[64];
+    private int pathDepth;
+    private boolean rootVisited;
+
+    private Token lookahead;    // current token, not consumed yet
+    private Token previous;     // most recently consumed token
+    private int current = 0;    // index of current token
+    private int reusedTokens = 0;
+
+    /**
+     * Lexes the text. Call parse() for the first AST.
+     * @throws RuntimeException if an unexpected character is encountered
+     */
+    public IncrementalParser(CharSequence text) {
+        this(text, ExprFactory.DEFAULT);
+    }
+
+    public IncrementalParser(CharSequence text, ExprFactory factory) {
+        this.lexer = new IncrementalLexer(text);
+        this.factory = factory;
+    }
+
+    /**
+     * Parses the current text, reusing what it can from the last successful parse
+     */
+    public Expr parse() throws ParseException {
+        current = 0;
+        previous = null;
+        lookahead = lexer.token(0);
+        reusedTokens = 0;
+        pathDepth = 0;
+        rootVisited = false;
+
+        SyntaxNode result = expression();
+
+        // After parsing it should be at EOF
+        if (!isAtEnd()) {
+            Token t = lookahead;
+            throw error("Unexpected token '" + t.getLexeme() + "' at position " + t.getPosition() + " after complete expression");
+        }
+
+        tree = result;
+        damageStart = Integer.MAX_VALUE;
+        damageEndOld = Integer.MAX_VALUE;
+        damageEndNew = Integer.MAX_VALUE;
+        return result.expr;
+    }
+
+    /**
+     * Applies an edit to the text and parses the result
+     * @param offset         where the edit starts in the current text
+     * @param deletedLength  number of characters removed at offset
+     * @param inserted       text inserted at offset
+     * @return the AST of the new text
+     * @throws ParseException if the new text does not parse; the edit is still applied
+     * @throws RuntimeException if the new text has an unexpected character; the edit is still applied
+     */
+    public Expr edit(int offset, int deletedLength, CharSequence inserted) throws ParseException {
+        try {
+            lexer.edit(offset, deletedLength, inserted);
+        } catch (RuntimeException e) {
+            // The next edit re-lexes everything, nothing of the tree can be matched up then
+            tree = null;
+            throw e;
+        }
+        addDamage(lexer.getEditStart(), lexer.getRemovedTokens(), lexer.getInsertedTokens());
+        return parse();
+    }
+
+    /**
+     * @return the current tokens, ending with EOF (a view that changes with every edit)
+     */
+    public List<Token> getTokens() {
+        return lexer.getTokens();
+    }
+
+    /**
+     * @return the current text (a view that changes with every edit)
+     */
+    public CharSequence getText() {
+        return lexer.getText();
+    }
+
+    /**
+     * @return how many tokens the last parse covered with reused subtrees instead of parsing them
+     */
+    public int getReusedTokens() {
+        return reusedTokens;
+    }
+
+    /**
+     * Adds the tokens replaced by an edit to the damaged range
+     */
+    private void addDamage(int start, int removed, int inserted) {
+        if (damageStart == Integer.MAX_VALUE) {
+            damageStart = start;
+            damageEndOld = start + removed;
+            damageEndNew = start + inserted;
+            return;
+        }
+        // Still damaged from a failed parse: widen the range to cover both edits
+        int end = Math.max(damageEndNew, start + removed);
+        damageEndOld += end - damageEndNew;
+        damageEndNew = end + inserted - removed;
+        damageStart = Math.min(damageStart, start);
+    }
+
+    // Grammar Rules, as in Parser but building SyntaxNodes
+
+    /**
+     * expression --> term ( (PLUS | MINUS) term )*
+     */
+    private SyntaxNode expression() throws ParseException {
+        SyntaxNode expr = reuse(SyntaxNode.ADDITIVE);
+        if (expr == null) {
+            expr = term();
+        }
+
+        while (match(TokenType.PLUS, TokenType.MINUS)) {
+            Token operator = previous;
+            SyntaxNode right = term();
+            expr = SyntaxNode.binary(SyntaxNode.ADDITIVE, factory.binary(expr.expr, operator, right.expr), expr, right);
+        }
+        return expr;
+    }
+
+    /**
+     * term -> factor ( (STAR | SLASH) factor )*
+     */
+    private SyntaxNode term() throws ParseException {
+        SyntaxNode expr = reuse(SyntaxNode.MULTIPLICATIVE);
+        if (expr == null) {
+            expr = factor();
+        }
+
+        while (match(TokenType.STAR, TokenType.SLASH)) {
+            Token operator = previous;
+            SyntaxNode right = factor();
+            expr = SyntaxNode.binary(SyntaxNode.MULTIPLICATIVE, factory.binary(expr.expr, operator, right.expr), expr, right);
+        }
+        return expr;
+    }
+
+    /**
+     * factor -> NUMBER | IDENTIFIER | LPAREN expression RPAREN | MINUS factor
+     */
+    private SyntaxNode factor() throws ParseException {
+        SyntaxNode reused = reuse(SyntaxNode.LEAF);
+        if (reused != null) {
+            return reused;
+        }
+
+        if (match(TokenType.MINUS)) {
+            Token operator = previous;
+            SyntaxNode right = factor();
+            return SyntaxNode.unary(factory.unary(operator, right.expr), right);
+        }
+
+        if (match(TokenType.NUMBER)) {
+            return SyntaxNode.leaf(factory.number(previous));
+        }
+
+        if (match(TokenType.IDENTIFIER)) {
+            return SyntaxNode.leaf(factory.variable(previous.getLexeme()));
+        }
+
+        if (match(TokenType.LPAREN)) {
+            SyntaxNode expr = expression();
+            // Expects a closing ')'
+            if (!match(TokenType.RPAREN)) {
+                throw error("Expected ')' to match '(' at starting position " + previous.getPosition());
+            }
+            return SyntaxNode.group(expr);
+        }
+
+        // if we reach here its an unexpected token
+        Token t = lookahead;
+        throw error("Unexpected Token '" + t.getLexeme() + " at position " + t.getPosition());
+    }
+
+    /**
+     * Looks for a subtree of the old tree that starts at the current token, covers only unchanged
+     * tokens and is what the given rule would parse here. If there is one, consumes its tokens.
+     * @param kind  ADDITIVE for expression, MULTIPLICATIVE for term, LEAF for factor (which also
+     *              accepts UNARY and GROUP)
+     * @return the largest such subtree, or null
+     */
+    private SyntaxNode reuse(byte kind) {
+        if (tree == null) {
+            return null;
+        }
+        // Index of the current token in the old tree
+        int q;
+        if (current < damageStart) {
+            q = current;
+        } else if (current >= damageEndNew) {
+            q = current - damageEndNew + damageEndOld;
+        } else {
+            return null;
+        }
+
+        // Leave the nodes that end before q, then go down to the node starting at q
+        while (pathDepth > 0 && pathStarts[pathDepth - 1] + path[pathDepth - 1].length <= q) {
+            pathDepth--;
+        }
+        if (pathDepth == 0) {
+            if (rootVisited || q >= tree.length) {
+                return null;
+            }
+            rootVisited = true;
+            push(tree, 0);
+        }
+        while (pathStarts[pathDepth - 1] < q) {
+            SyntaxNode node = path[pathDepth - 1];
+            int start = pathStarts[pathDepth - 1];
+            int leftStart = start + node.leftOffset();
+            if (q >= leftStart && q < leftStart + node.left.length) {
+                push(node.left, leftStart);
+            } else if (node.right != null && q >= start + node.rightOffset()) {
+                push(node.right, start + node.rightOffset());
+            } else {
+                return null;    // q is an operator or parenthesis of this node
+            }
+        }
+
+        // Every node on the left spine starts at q, take the largest that fits
+        int spine = pathDepth;
+        for (SyntaxNode node = path[pathDepth - 1]; node != null; node = node.isBinary() ? node.left : null) {
+            if (node != path[spine - 1]) {
+                push(node, q);
+            }
+            boolean fits = kind == SyntaxNode.LEAF ? !node.isBinary() : node.kind == kind;
+            // An ADDITIVE node also depends on the token after it
+            int end = q + node.length + (kind == SyntaxNode.ADDITIVE ? 1 : 0);
+            if (fits && (end <= damageStart || q >= damageEndOld)) {
+                consume(node);
+                return node;
+            }
+        }
+        // Nothing fits: keep the cursor where it was, the next rule may look at the same spine
+        pathDepth = spine;
+        return null;
+    }
+
+    private void push(SyntaxNode node, int start) {
+        if (pathDepth == path.length) {
+            path = Arrays.copyOf(path, pathDepth * 2);
+            pathStarts = Arrays.copyOf(pathStarts, pathDepth * 2);
+        }
+        path[pathDepth] = node;
+        pathStarts[pathDepth] = start;
+        pathDepth++;
+    }
+
+    /**
+     * Skips the tokens of a reused subtree
+     */
+    private void consume(SyntaxNode node) {
+        current += node.length;
+        reusedTokens += node.length;
+        previous = lexer.token(current - 1);
+        lookahead = lexer.token(current);
+    }
+
+    // Helper Methods for token handling
+
+    /**
+     * returns true and consumes the current token if it matches any of the specified types
+     */
+    private boolean match(TokenType... types) {
+        for (TokenType type : types) {
+            if (!isAtEnd() && lookahead.getType() == type) {
+                previous = lookahead;
+                current++;
+                lookahead = lexer.token(current);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if reached the EOF token
+     */
+    private boolean isAtEnd() {
+        return lookahead.getType() == TokenType.EOF;
+    }
+
+    // error handling, same offsets as Parser (source position of the current token)
+    private ParseException error(String message) {
+        return new ParseException(message, lookahead.getPosition());
+    }
+}
@@ -0,0 +1,308 @@
+package mini_expr_compiler.parser;
+
+import mini_expr_compiler.lexer1.*;
+import mini_expr_compiler.ast.*;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parser that accepts the same language as Parser but never recurses, so the depth of the
+ * input (nested parentheses, chains of unary minus) is limited only by heap, not by the Java stack.
+ *
+ * It is an operator-precedence (shunting-yard) parser with two explicit stacks:
+ * - operands:  finished subtrees
+ * - operators: pending binary operators, unary minuses and open parentheses
+ *
+ * The parser alternates between expecting an operand and expecting an operator:
+ *
+ *   expecting operand:   '-'  push unary minus
+ *                        '('  push open parenthesis
+ *                        NUMBER / IDENTIFIER  push operand, apply pending unary minuses,
+ *                                             now expecting an operator
+ *   expecting operator:  '+' '-' '*' '/'  reduce operators of equal or higher precedence
+ *                                         (so all four stay left-associative), push it
+ *                        ')'  reduce back to the matching '(' and apply pending unary minuses
+ *                        EOF  reduce everything
+ *
+ * Every token is pushed and popped at most once, so parsing is linear in the input size.
+ * The resulting AST and the ParseException messages / offsets are the same as Parser's.
+ *
+ * parseRecovering() recovers from errors exactly like Parser.parseRecovering() and returns the same
+ * tree and diagnostics, for input of any depth: a missing operand becomes an ErrorExpr, and where an
+ * operator was expected the current group (or the whole expression at the top level) is reduced and
+ * tokens are skipped up to the next operator, the ')' closing the group or EOF.
+ */
+public class IterativeParser {
+
+    // Kinds of entries on the operator stack
+    private static final byte NEGATE = 0;
+    private static final byte ADDITIVE = 1;         // + -
+    private static final byte MULTIPLICATIVE = 2;   // * /
+    private static final byte OPEN_PAREN = 3;
+
+    private final TokenSource tokens;
+    private final ExprFactory factory;
+    private Token lookahead;    // current token, not consumed yet
+    private Token previous;     // most recently consumed token
+    private int current = 0;    // index of current token
+
+    private Expr[] operands = new Expr[16];
+    private int operandCount = 0;
+    private byte[] operatorKinds = new byte[16];
+    private Token[] operatorTokens = new Token[16];
+    private int operatorCount = 0;
+    private int openParens = 0;
+
+    private List<Diagnostic> diagnostics;   // null unless recovering
+    private int lastErrorPosition = -1;     // errors at the same position are reported once
+
+    public IterativeParser(List<Token> tokens) {
+        this(TokenSource.of(tokens));
+    }
+
+    public IterativeParser(TokenSource tokens) {
+        this(tokens, ExprFactory.DEFAULT);
+    }
+
+    public IterativeParser(TokenSource tokens, ExprFactory factory) {
+        this.tokens = tokens;
+        this.factory = factory;
+    }
+
+    public Expr parse() throws ParseException {
+        lookahead = tokens.next();
+
+        while (true) {
+            // Expecting an operand
+            Token t = lookahead;
+            switch (t.getType()) {
+                case MINUS:
+                    advance();
+                    pushOperator(NEGATE, t);
+                    continue;
+                case LPAREN:
+                    advance();
+                    pushOperator(OPEN_PAREN, t);
+                    openParens++;
+                    continue;
+                case NUMBER:
+                    advance();
+                    pushOperand(factory.number(t));
+                    break;
+                case IDENTIFIER:
+                    advance();
+                    pushOperand(factory.variable(t.getLexeme()));
+                    break;
+                default:
+                    // the operand is missing, the token is left for the operator state
+                    report(t, "Unexpected Token '" + t.getLexeme() + " at position " + t.getPosition());
+                    pushOperand(new ErrorExpr(t.getPosition()));
+                    break;
+            }
+            applyNegations();
+
+            // Expecting an operator
+            while (true) {
+                t = lookahead;
+                switch (t.getType()) {
+                    case PLUS:
+                    case MINUS:
+                        advance();
+                        reduceWhileAtLeast(ADDITIVE);
+                        pushOperator(ADDITIVE, t);
+                        break;
+                    case STAR:
+                    case SLASH:
+                        advance();
+                        reduceWhileAtLeast(MULTIPLICATIVE);
+                        pushOperator(MULTIPLICATIVE, t);
+                        break;
+                    case RPAREN:
+                        if (openParens == 0) {
+                            report(t, "Unexpected token '" + t.getLexeme() + "' at position " + t.getPosition() + " after complete expression");
+                            resynchronize();
+                            continue;
+                        }
+                        advance();
+                        reduceWhileAtLeast(ADDITIVE);
+                        operatorCount--;    // the matching '('
+                        openParens--;
+                        applyNegations();
+                        continue;           // still expecting an operator
+                    case EOF:
+                        if (openParens > 0) {
+                            report(t, "Expected ')' to match '(' at starting position " + previous.getPosition());
+                            closeGroups();
+                        }
+                        reduceWhileAtLeast(ADDITIVE);
+                        return operands[0];
+                    default:
+                        if (openParens > 0) {
+                            report(t, "Expected ')' to match '(' at starting position " + previous.getPosition());
+                        } else {
+                            report(t, "Unexpected token '" + t.getLexeme() + "' at position " + t.getPosition() + " after complete expression");
+                        }
+                        resynchronize();
+                        continue;
+                }
+                break;      // a binary operator was pushed, expect an operand again
+            }
+        }
+    }
+
+    /**
+     * Parses the whole input, collecting errors instead of stopping at the first one
+     * (see the class comment). Lexical errors surface as thrown by the token source; use
+     * parseRecovering(CharSequence) to collect those too.
+     *
+     * @return the tree, partial if there were errors, and the diagnostics
+     */
+    public ParseResult parseRecovering() {
+        return parseRecovering(new ArrayList<>());
+    }
+
+    /**
+     * Lexes and parses the source in one pass, collecting lexical and syntax errors
+     */
+    public static ParseResult parseRecovering(CharSequence source) {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        return new IterativeParser(new Lexer(source).onError(Parser.lexicalErrors(diagnostics))).parseRecovering(diagnostics);
+    }
+
+    /**
+     * Same as parseRecovering(CharSequence), reading the source through the Lexer's buffer
+     */
+    public static ParseResult parseRecovering(Reader source) {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        return new IterativeParser(new Lexer(source).onError(Parser.lexicalErrors(diagnostics))).parseRecovering(diagnostics);
+    }
+
+    private ParseResult parseRecovering(List<Diagnostic> diagnostics) {
+        this.diagnostics = diagnostics;
+        try {
+            return new ParseResult(parse(), diagnostics);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Syntax error while recovering", e);    // reported, never thrown
+        } finally {
+            this.diagnostics = null;
+        }
+    }
+
+    // Error recovery
+
+    /**
+     * Called after reporting an unexpected token where an operator or the end of the current
+     * group was expected. Reduces the group, then skips tokens, together with any parenthesized
+     * groups they open, up to the next operator, the ')' closing the group (unmatched ones are
+     * skipped at the top level) or EOF. The caller goes on expecting an operator from there,
+     * so an operator takes the reduced group as its left operand.
+     */
+    private void resynchronize() {
+        reduceWhileAtLeast(ADDITIVE);
+        int depth = 0;
+        while (lookahead.getType() != TokenType.EOF) {
+            TokenType type = lookahead.getType();
+            if (depth == 0 && (type == TokenType.PLUS || type == TokenType.MINUS
+                    || type == TokenType.STAR || type == TokenType.SLASH)) {
+                return;
+            }
+            if (type == TokenType.LPAREN) {
+                depth++;
+            } else if (type == TokenType.RPAREN) {
+                if (depth == 0 && openParens > 0) {
+                    return;
+                }
+                depth = Math.max(depth - 1, 0);
+            }
+            advance();
+        }
+    }
+
+    /**
+     * At EOF with groups still open (only when recovering): closes them all as if each ')' were there
+     */
+    private void closeGroups() {
+        while (openParens > 0) {
+            reduceWhileAtLeast(ADDITIVE);
+            operatorCount--;    // the matching '('
+            openParens--;
+            applyNegations();
+        }
+    }
+
+    /**
+     * Pops binary operators whose precedence is at least minKind and combines their operands.
+     * Stops at an open parenthesis. Binary operators are only ever pushed onto an operand,
+     * so no unary minus can be waiting below them.
+     */
+    private void reduceWhileAtLeast(byte minKind) {
+        while (operatorCount > 0) {
+            byte kind = operatorKinds[operatorCount - 1];
+            if (kind == OPEN_PAREN || kind < minKind) {
+                return;
+            }
+            Token operator = operatorTokens[--operatorCount];
+            operatorTokens[operatorCount] = null;
+            Expr right = operands[--operandCount];
+            Expr left = operands[operandCount - 1];
+            operands[operandCount] = null;
+            operands[operandCount - 1] = factory.binary(left, operator, right);
+        }
+    }
+
+    /**
+     * Unary minus binds to the factor right after it: once that factor is complete,
+     * apply every unary minus directly in front of it
+     */
+    private void applyNegations() {
+        while (operatorCount > 0 && operatorKinds[operatorCount - 1] == NEGATE) {
+            Token operator = operatorTokens[--operatorCount];
+            operatorTokens[operatorCount] = null;
+            operands[operandCount - 1] = factory.unary(operator, operands[operandCount - 1]);
+        }
+    }
+
+    private void pushOperand(Expr expr) {
+        if (operandCount == operands.length) {
+            operands = Arrays.copyOf(operands, operandCount * 2);
+        }
+        operands[operandCount++] = expr;
+    }
+
+    private void pushOperator(byte kind, Token token) {
+        if (operatorCount == operatorKinds.length) {
+            operatorKinds = Arrays.copyOf(operatorKinds, operatorCount * 2);
+            operatorTokens = Arrays.copyOf(operatorTokens, operatorCount * 2);
+        }
+        operatorKinds[operatorCount] = kind;
+        operatorTokens[operatorCount] = token;
+        operatorCount++;
+    }
+
+    /**
+     * Consumes the current token
+     */
+    private void advance() {
+        previous = lookahead;
+        lookahead = tokens.next();
+        current++;
+    }
+
+    // error handling, same offsets as Parser (source position of the offending token)
+
+    /**
+     * Throws the error, or when recovering, records it and returns
+     */
+    private void report(Token token, String message) throws ParseException {
+        if (diagnostics == null) {
+            throw new ParseException(message, token.getPosition());
+        }
+        if (token.getPosition() != lastErrorPosition) {
+            lastErrorPosition = token.getPosition();
+            diagnostics.add(new Diagnostic(Diagnostic.Kind.SYNTAX, token.getPosition(), token.getLexeme().length(), message));
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package mini_expr_compiler.parser;
+
+import mini_expr_compiler.lexer1.*;
+import mini_expr_compiler.ast.*;
+import java.math.BigInteger;
+import java.text.ParseException;
+import java.util.Arrays;
+
+/**
+ * Parser that reads PackedTokens directly.
+ *
+ * Accepts the same grammar as Parser and produces the same AST and error messages:
+ *
+ *   expression -> term ( (PLUS | MINUS) term )*
+ *   term       -> factor ( (STAR | SLASH) factor )*
+ *   factor     -> NUMBER
+ *               | IDENTIFIER
+ *               | LPAREN expression RPAREN
+ *               | MINUS factor      // unary minus
+ *
+ * Like IterativeParser it never recurses: pending operators and finished subtrees are kept
+ * on explicit stacks, so deeply nested input is limited by heap rather than the Java stack.
+ * The operator stack holds token indexes instead of Token objects.
+ *
+ * Token types and values are read straight from the packed arrays. The only Token
+ * objects created are the operator tokens stored in BinaryExpr / UnaryExpr nodes, and
+ * their lexemes are shared constants rather than substrings of the input.
+ */
+public class PackedParser {
+
+    // Kinds of entries on the operator stack
+    private static final byte NEGATE = 0;
+    private static final byte ADDITIVE = 1;         // + -
+    private static final byte MULTIPLICATIVE = 2;   // * /
+    private static final byte OPEN_PAREN = 3;
+
+    private final PackedTokens tokens;
+    private int current = 0;    // index of current token
+
+    private Expr[] operands = new Expr[16];
+    private int operandCount = 0;
+    private byte[] operatorKinds = new byte[16];
+    private int[] operatorIndexes = new int[16];    // token index of each pending operator
+    private int operatorCount = 0;
+    private int openParens = 0;
+
+    public PackedParser(PackedTokens tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Parses the tokens from the beginning. Can be called again after the
+     * PackedTokens have been refilled with a new input, so one parser can be reused.
+     */
+    public Expr parse() throws ParseException {
+        current = 0;
+        operatorCount = 0;
+        openParens = 0;
+        Arrays.fill(operands, 0, operandCount, null);
+        operandCount = 0;
+
+        while (true) {
+            // Expecting an operand
+            switch (tokens.type(current)) {
+                case MINUS:
+                    pushOperator(NEGATE, current++);
+                    continue;
+                case LPAREN:
+                    pushOperator(OPEN_PAREN, current++);
+                    openParens++;
+                    continue;
+                case NUMBER:
+                    pushOperand(number(current++));
+                    break;
+                case IDENTIFIER:
+                    pushOperand(new VariableExpr(tokens.lexeme(current++)));
+                    break;
+                default:
+                    throw error("Unexpected Token '" + tokens.lexeme(current) + " at position " + tokens.start(current));
+            }
+            applyNegations();
+
+            // Expecting an operator
+            while (true) {
+                switch (tokens.type(current)) {
+                    case PLUS:
+                    case MINUS:
+                        reduceWhileAtLeast(ADDITIVE);
+                        pushOperator(ADDITIVE, current++);
+                        break;
+                    case STAR:
+                    case SLASH:
+                        reduceWhileAtLeast(MULTIPLICATIVE);
+                        pushOperator(MULTIPLICATIVE, current++);
+                        break;
+                    case RPAREN:
+                        if (openParens == 0) {
+                            throw unexpectedAfterExpression();
+                        }
+                        current++;
+                        reduceWhileAtLeast(ADDITIVE);
+                        operatorCount--;    // the matching '('
+                        openParens--;
+                        applyNegations();
+                        continue;           // still expecting an operator
+                    case EOF:
+                        if (openParens > 0) {
+                            throw error("Expected ')' to match '(' at starting position " + tokens.start(current - 1));
+                        }
+                        reduceWhileAtLeast(ADDITIVE);
+                        Expr expr = operands[0];
+                        operands[0] = null;
+                        operandCount = 0;
+                        return expr;
+                    default:
+                        if (openParens > 0) {
+                            throw error("Expected ')' to match '(' at starting position " + tokens.start(current - 1));
+                        }
+                        throw unexpectedAfterExpression();
+                }
+                break;      // a binary operator was pushed, expect an operand again
+            }
+        }
+    }
+
+    /**
+     * Pops binary operators whose precedence is at least minKind and combines their operands.
+     * Stops at an open parenthesis.
+     */
+    private void reduceWhileAtLeast(byte minKind) {
+        while (operatorCount > 0) {
+            byte kind = operatorKinds[operatorCount - 1];
+            if (kind == OPEN_PAREN || kind < minKind) {
+                return;
+            }
+            Token operator = operator(operatorIndexes[--operatorCount]);
+            Expr right = operands[--operandCount];
+            Expr left = operands[operandCount - 1];
+            operands[operandCount] = null;
+            operands[operandCount - 1] = new BinaryExpr(left, operator, right);
+        }
+    }
+
+    /**
+     * Applies every unary minus directly in front of the factor that was just completed
+     */
+    private void applyNegations() {
+        while (operatorCount > 0 && operatorKinds[operatorCount - 1] == NEGATE) {
+            Token operator = operator(operatorIndexes[--operatorCount]);
+            operands[operandCount - 1] = new UnaryExpr(operator, operands[operandCount - 1]);
+        }
+    }
+
+    private void pushOperand(Expr expr) {
+        if (operandCount == operands.length) {
+            operands = Arrays.copyOf(operands, operandCount * 2);
+        }
+        operands[operandCount++] = expr;
+    }
+
+    private void pushOperator(byte kind, int index) {
+        if (operatorCount == operatorKinds.length) {
+            operatorKinds = Arrays.copyOf(operatorKinds, operatorCount * 2);
+            operatorIndexes = Arrays.copyOf(operatorIndexes, operatorCount * 2);
+        }
+        operatorKinds[operatorCount] = kind;
+        operatorIndexes[operatorCount] = index;
+        operatorCount++;
+    }
+
+    /**
+     * @return the literal of NUMBER token i, of any size
+     */
+    private NumberExpr number(int i) {
+        return tokens.isInt(i) ? new NumberExpr(tokens.value(i)) : new NumberExpr(new BigInteger(tokens.lexeme(i)));
+    }
+
+    private ParseException unexpectedAfterExpression() {
+        return error("Unexpected token '" + tokens.lexeme(current) + "' at position " + tokens.start(current) + " after complete expression");
+    }
+
+    // Helper Methods for token handling
+
+    /**
+     * Creates the Token object an AST node needs for operator token i
+     */
+    private Token operator(int i) {
+        TokenType type = tokens.type(i);
+        return new Token(type, lexemeOf(type), tokens.start(i));
+    }
+
+    private static String lexemeOf(TokenType type) {
+        switch (type) {
+            case PLUS:
+                return "+";
+            case MINUS:
+                return "-";
+            case STAR:
+                return "*";
+            case SLASH:
+                return "/";
+            default:
+                throw new IllegalArgumentException("Not an operator: " + type);
+        }
+    }
+
+    private ParseException error(String message) {
+        return new ParseException(message, tokens.start(current));
+    }
+}
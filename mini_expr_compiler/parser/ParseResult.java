@@ -0,0 +1,39 @@
+package mini_expr_compiler.parser;
+
+import mini_expr_compiler.ast.Expr;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of Parser.parseRecovering() or IterativeParser.parseRecovering(): a tree, which is partial if there are diagnostics
+ */
+public final class ParseResult {
+
+    private final Expr expr;
+    private final List<Diagnostic> diagnostics;
+
+    ParseResult(Expr expr, List<Diagnostic> diagnostics) {
+        this.expr = expr;
+        this.diagnostics = Collections.unmodifiableList(diagnostics);
+    }
+
+    /**
+     * @return the tree; where operands could not be parsed it holds ErrorExpr nodes, and tokens
+     *         skipped while recovering are missing from it
+     */
+    public Expr getExpr() {
+        return expr;
+    }
+
+    /**
+     * @return the problems found, in source order
+     */
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+
+    public boolean hasErrors() {
+        return !diagnostics.isEmpty();
+    }
+}
@@ -2,8 +2,12 @@ package mini_expr_compiler.parser;
 
 import mini_expr_compiler.lexer1.*;
 import mini_expr_compiler.ast.*;
+import mini_expr_compiler.metrics.ParseEvent;
+import java.io.Reader;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.ObjIntConsumer;
 /**
  * Parser for Mini Expression Compiler.
  *
@@ -11,35 +15,146 @@ import java.util.List;
  *
  *   E -> E + T | E - T | T
  *   T -> T * F | T / F | F
- *   F -> (E) | number
+ *   F -> (E) | number | identifier
  *
  * Internally, we use the equivalent right-recursive / iterative form:
  *
  *   expression -> term ( (PLUS | MINUS) term )*
  *   term       -> factor ( (STAR | SLASH) factor )*
  *   factor     -> NUMBER
+ *               | IDENTIFIER
  *               | LPAREN expression RPAREN
  *               | MINUS factor      // unary minus
  *
  * The parser both validates the syntax, then builds an AST (expression tree).
+ *
+ * parse() stops at the first error. parseRecovering() instead records it as a Diagnostic and
+ * resynchronizes: a missing operand becomes an ErrorExpr, and unexpected tokens are skipped up to
+ * the next operator or the ')' closing the current group, where parsing resumes. All errors of
+ * the input are thus found in one linear pass, and the first diagnostic is exactly what parse()
+ * would have thrown. Like parse() it recurses once per nesting level; IterativeParser.parseRecovering()
+ * gives the same result for input of any depth.
+ *
+ * While a Flight Recorder recording has ParseEvent enabled, each parse() is emitted as an event
+ * with the token count and the size and depth of the tree.
  */
 public class Parser {
 
-    private final List<Token> tokens; 
+    private final TokenSource tokens;
+    private final ExprFactory factory;  // creates the AST nodes
+    private Token lookahead;    // current token, not consumed yet
+    private Token previous;     // most recently consumed token
     private int current = 0;    // index of current token
 
+    private List<Diagnostic> diagnostics;   // null unless recovering
+    private int lastErrorPosition = -1;     // errors at the same position are reported once
+
     public Parser(List<Token> tokens){
+        this(TokenSource.of(tokens));
+    }
+
+    /**
+     * Creates a parser that pulls tokens from the source one at a time.
+     * Only the current and previous token are kept, so memory used for tokens
+     * stays constant however long the input is.
+     */
+    public Parser(TokenSource tokens) {
+        this(tokens, ExprFactory.DEFAULT);
+    }
+
+    /**
+     * Creates a parser that builds its nodes through the given factory,
+     * e.g. an InterningExprFactory to share repeated subtrees.
+     */
+    public Parser(TokenSource tokens, ExprFactory factory) {
         this.tokens = tokens;
+        this.factory = factory;
     }
 
     public Expr parse() throws ParseException  {
+        ParseEvent event = new ParseEvent();
+        if (!event.isEnabled()) {
+            return parseExpression();
+        }
+        event.begin();
+        try {
+            Expr expr = parseExpression();
+            event.end();
+            if (event.shouldCommit()) {
+                event.tokenCount = current + 1;
+                event.setTree(expr);
+                event.outcome = "OK";
+                event.commit();
+            }
+            return expr;
+        } catch (ParseException | RuntimeException e) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.tokenCount = current + 1;
+                event.outcome = e.getClass().getSimpleName();
+                event.commit();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Parses the whole input, collecting errors instead of stopping at the first one
+     * (see the class comment). Lexical errors surface as thrown by the token source; use
+     * parseRecovering(CharSequence) to collect those too.
+     *
+     * @return the tree, partial if there were errors, and the diagnostics
+     */
+    public ParseResult parseRecovering() {
+        return parseRecovering(new ArrayList<>());
+    }
+
+    /**
+     * Lexes and parses the source in one pass, collecting lexical and syntax errors
+     */
+    public static ParseResult parseRecovering(CharSequence source) {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        return new Parser(new Lexer(source).onError(lexicalErrors(diagnostics))).parseRecovering(diagnostics);
+    }
+
+    /**
+     * Same as parseRecovering(CharSequence), reading the source through the Lexer's buffer
+     */
+    public static ParseResult parseRecovering(Reader source) {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        return new Parser(new Lexer(source).onError(lexicalErrors(diagnostics))).parseRecovering(diagnostics);
+    }
+
+    static ObjIntConsumer<String> lexicalErrors(List<Diagnostic> diagnostics) {
+        return (message, position) -> diagnostics.add(new Diagnostic(Diagnostic.Kind.LEXICAL, position, 1, message));
+    }
+
+    /**
+     * @param diagnostics  where errors are added; the lexer may add to it as well, tokens are
+     *                     pulled in source order so the list stays sorted
+     */
+    private ParseResult parseRecovering(List<Diagnostic> diagnostics) {
+        this.diagnostics = diagnostics;
+        try {
+            return new ParseResult(parse(), diagnostics);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Syntax error while recovering", e);    // reported, never thrown
+        } finally {
+            this.diagnostics = null;
+        }
+    }
 
+    private Expr parseExpression() throws ParseException {
+        if (lookahead == null) {
+            lookahead = tokens.next();
+        }
         Expr expr = expression();
 
         // After parsing it should be at EOF
-        if(!isAtEnd()){
+        while (!isAtEnd()) {
             Token t = peek();
-            throw error(t, "Unexpected token '" + t.getLexeme() + "' at position " + t.getPosition() + " after complete expression");
+            report(t, "Unexpected token '" + t.getLexeme() + "' at position " + t.getPosition() + " after complete expression");
+            expr = resynchronize(expr, false);
         }
 
         return expr;
@@ -50,12 +165,17 @@ public class Parser {
      * expression --> term ( (PLUS | MINUS ))
      */
     private Expr expression() throws ParseException{
-        Expr expr = term();
+        return expressionRest(term());
+    }
 
+    /**
+     * The ( (PLUS | MINUS) term )* part of expression, with expr as the first operand
+     */
+    private Expr expressionRest(Expr expr) throws ParseException {
         while (match(TokenType.PLUS, TokenType.MINUS)) {
             Token operator = previous();
             Expr right = term();
-            expr = new BinaryExpr(expr, operator, right); 
+            expr = factory.binary(expr, operator, right);
         }
       return expr;
     }
@@ -64,18 +184,24 @@ public class Parser {
      * term -> factor ( (STAR | SLASH) )
      */
     private Expr term() throws ParseException {
-        Expr expr = factor();
+        return termRest(factor());
+    }
 
+    /**
+     * The ( (STAR | SLASH) factor )* part of term, with expr as the first operand
+     */
+    private Expr termRest(Expr expr) throws ParseException {
          while (match(TokenType.STAR, TokenType.SLASH)) {
             Token operator = previous();
-            Expr right = term();
-            expr = new BinaryExpr(expr, operator, right); 
+            Expr right = factor();
+            expr = factory.binary(expr, operator, right);
         }
         return expr;
     }
 
     /**
      * factor -> NUMBER
+     *         | IDENTIFIER
      *         | LPAREN expression RPAREN
      *         | MINUS factor        (unary minus)
      */
@@ -85,25 +211,64 @@ public class Parser {
         if(match(TokenType.MINUS)) {
             Token operator = previous();
             Expr right = factor();
-            return new UnaryExpr(operator,right);
+            return factory.unary(operator, right);
         }
 
         if(match(TokenType.NUMBER)) {
-            Token numberToken = previous();
-            int value = numberToken.getNumericValue();
-            return new NumberExpr(value);
+            return factory.number(previous());
+        }
+
+        if(match(TokenType.IDENTIFIER)) {
+            return factory.variable(previous().getLexeme());
         }
 
         if(match(TokenType.LPAREN)) {
             Expr expr = expression();
             // Expects a closing ')' 
-            consume(TokenType.RPAREN, "Expected ')' to match '(' at starting position " + previous().getPosition());
+            while (!check(TokenType.RPAREN)) {
+                report(peek(), "Expected ')' to match '(' at starting position " + previous().getPosition());
+                if (isAtEnd()) {
+                    return expr;
+                }
+                expr = resynchronize(expr, true);
+            }
+            advance();
             return expr;
         }
 
-        // if we reach here its an unexpected token
+        // if we reach here its an unexpected token (an operator, ')' or EOF), which is left for the caller
         Token t = peek();
-        throw error(t, "Unexpected Token '" + t.getLexeme() + " at position " + t.getPosition());
+        report(t, "Unexpected Token '" + t.getLexeme() + " at position " + t.getPosition());
+        return new ErrorExpr(t.getPosition());
+    }
+
+    // Error recovery
+
+    /**
+     * Called after reporting an unexpected token where an operator or the end of the current
+     * group was expected. Skips tokens, together with any parenthesized groups they open, up to
+     * the next operator, the ')' closing the group (if inGroup; unmatched ones are skipped at the
+     * top level) or EOF. At an operator parsing resumes with expr as its left operand.
+     */
+    private Expr resynchronize(Expr expr, boolean inGroup) throws ParseException {
+        int depth = 0;
+        while (!isAtEnd()) {
+            TokenType type = peek().getType();
+            if (depth == 0 && (type == TokenType.PLUS || type == TokenType.MINUS
+                    || type == TokenType.STAR || type == TokenType.SLASH)) {
+                return expressionRest(termRest(expr));
+            }
+            if (type == TokenType.LPAREN) {
+                depth++;
+            } else if (type == TokenType.RPAREN) {
+                if (depth == 0 && inGroup) {
+                    return expr;
+                }
+                depth = Math.max(depth - 1, 0);
+            }
+            advance();
+        }
+        return expr;
     }
 
     // Helper Methods for token handling
@@ -122,16 +287,6 @@ public class Parser {
         return false;
     }
 
-    /**
-     * Ensures current token has a type. if not throw ParseException
-     */
-    private Token consume(TokenType type, String message) throws ParseException {
-        if (check(type)) {
-            return advance();
-        }
-        throw error(peek(), message);
-    }
-
     /**
      * Checks if the current token has a type 
      * @param type  Type of token 
@@ -149,6 +304,8 @@ public class Parser {
      */
     private Token advance() {
         if (!isAtEnd()) {
+            previous = lookahead;
+            lookahead = tokens.next();
             current++;
         }
         return previous();
@@ -165,18 +322,31 @@ public class Parser {
      * @return the current token 
      */
     private Token peek() {
-        return tokens.get(current);
+        return lookahead;
     }
 
     /**
      * @return the most recently consumed token
      */
     private Token previous() {
-        return tokens.get(current - 1);
+        return previous;
     }
 
-    // error handling, can be modified
+    // error handling: the offset is where the offending token starts in the source
     private ParseException error(Token token, String message){
-        return new ParseException(message,current);
+        return new ParseException(message, token.getPosition());
+    }
+
+    /**
+     * Throws the error, or when recovering, records it and returns
+     */
+    private void report(Token token, String message) throws ParseException {
+        if (diagnostics == null) {
+            throw error(token, message);
+        }
+        if (token.getPosition() != lastErrorPosition) {
+            lastErrorPosition = token.getPosition();
+            diagnostics.add(new Diagnostic(Diagnostic.Kind.SYNTAX, token.getPosition(), token.getLexeme().length(), message));
+        }
     }
 }
@@ -0,0 +1,68 @@
+package mini_expr_compiler.parser;
+
+import mini_expr_compiler.ast.Expr;
+
+/**
+ * Node of the syntax tree IncrementalParser keeps next to the AST.
+ *
+ * It records how many tokens each subtree covers, which the Expr nodes do not, and has an extra
+ * GROUP node for parentheses (the AST drops them). Children are positioned relative to their
+ * parent (a binary node's right child starts after the left child and the operator, the child of
+ * UNARY and GROUP after the first token), so a subtree stays valid wherever an edit moves it.
+ */
+final class SyntaxNode {
+
+    static final byte LEAF = 0;             // NUMBER or IDENTIFIER
+    static final byte UNARY = 1;            // '-' factor
+    static final byte GROUP = 2;            // '(' expression ')'
+    static final byte ADDITIVE = 3;         // left ('+' | '-') right
+    static final byte MULTIPLICATIVE = 4;   // left ('*' | '/') right
+
+    final byte kind;
+    final Expr expr;        // the AST of this subtree; for GROUP the same as its child's
+    final int length;       // number of tokens covered
+    final SyntaxNode left;  // left operand, or the only child of UNARY and GROUP
+    final SyntaxNode right;
+
+    private SyntaxNode(byte kind, Expr expr, int length, SyntaxNode left, SyntaxNode right) {
+        this.kind = kind;
+        this.expr = expr;
+        this.length = length;
+        this.left = left;
+        this.right = right;
+    }
+
+    static SyntaxNode leaf(Expr expr) {
+        return new SyntaxNode(LEAF, expr, 1, null, null);
+    }
+
+    static SyntaxNode unary(Expr expr, SyntaxNode operand) {
+        return new SyntaxNode(UNARY, expr, operand.length + 1, operand, null);
+    }
+
+    static SyntaxNode group(SyntaxNode inner) {
+        return new SyntaxNode(GROUP, inner.expr, inner.length + 2, inner, null);
+    }
+
+    static SyntaxNode binary(byte kind, Expr expr, SyntaxNode left, SyntaxNode right) {
+        return new SyntaxNode(kind, expr, left.length + 1 + right.length, left, right);
+    }
+
+    boolean isBinary() {
+        return kind >= ADDITIVE;
+    }
+
+    /**
+     * @return token offset of the first child (left) relative to this node
+     */
+    int leftOffset() {
+        return isBinary() ? 0 : 1;
+    }
+
+    /**
+     * @return token offset of the right child relative to this node
+     */
+    int rightOffset() {
+        return left.length + 1;
+    }
+}
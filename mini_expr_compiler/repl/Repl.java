@@ -0,0 +1,408 @@
+package mini_expr_compiler.repl;
+
+import mini_expr_compiler.ast.*;
+import mini_expr_compiler.cache.*;
+import mini_expr_compiler.eval.*;
+import mini_expr_compiler.lexer1.*;
+import mini_expr_compiler.metrics.*;
+import mini_expr_compiler.parser.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import javax.management.JMException;
+
+/**
+ * Interactive session: reads one expression per line and runs it through the whole pipeline
+ * (lex, parse, print, evaluate) in the same JVM, so after the first few inputs class loading is
+ * done and the JIT has compiled the hot paths.
+ *
+ * Input is parsed with IterativeParser and int mode evaluates with IterativeEvaluator, so deeply
+ * nested expressions work like any other. Errors are reported per input and never end the session.
+ *
+ * Parsed ASTs are kept in an ExpressionCache for the whole session, so an expression entered
+ * again (also through :let and :bench) is neither lexed nor parsed a second time. ASTs do not
+ * depend on variables or the numeric mode, so :let and :mode leave the cache valid.
+ *
+ * Commands:
+ *   :ast                 toggle printing the AST (on by default)
+ *   :tokens              toggle the token dump
+ *   :time                toggle per-phase timings in nanoseconds
+ *   :let <name> <expr>   evaluate expr and bind it to a variable
+ *   :mode <mode>         numeric mode: int (wraps on overflow, the default), checked, long or big
+ *   :bench <expr> <n>    warm up, then time n runs of the full pipeline, of a cache lookup plus
+ *                        evaluation, and of evaluation alone
+ *   :metrics [on|off|reset]
+ *                        collect per-phase latency histograms, allocation and error counts (also
+ *                        published over JMX once turned on); without an argument prints them and
+ *                        the AST cache counters
+ *   :help                list the commands
+ *   :quit                end the session (so does end of input)
+ */
+public class Repl {
+
+    private static final long CACHE_BYTES = 16 << 20;     // budget for the source text of cached ASTs
+    private static final int PRINT_DEPTH = 64;            // deeper subtrees print as "...", the full drawing grows with depth squared
+
+    private final BufferedReader in;
+    private final PrintStream out;
+
+    private final Map<String, Integer> variables = new HashMap<>();
+    private NumericMode mode = NumericMode.INT;
+    private String modeName = "int";
+    private Function<Expr, Number> evaluator = mode.evaluator(variables);
+    private final AstPrinter printer = new AstPrinter();
+    private final ExpressionCache<Expr> cache = ExpressionCache.withMaxBytes(CACHE_BYTES, ast -> ast);
+    private final PipelineMetrics metrics = new PipelineMetrics(false);
+    private boolean metricsRegistered = false;
+
+    private boolean showAst = true;
+    private boolean showTokens = false;
+    private boolean showTimings = false;
+
+    private int sink;   // results of :bench runs go here so the JIT cannot drop the work
+
+    public Repl(BufferedReader in, PrintStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    /**
+     * Runs the session until :quit or end of input
+     */
+    public void run() throws IOException {
+        out.println("Mini expression REPL, :help for commands");
+        while (true) {
+            out.print("> ");
+            out.flush();
+            String line = in.readLine();
+            if (line == null) {
+                return;
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                if (line.startsWith(":")) {
+                    if (!command(line)) {
+                        return;
+                    }
+                } else {
+                    evaluate(line);
+                }
+            } catch (StackOverflowError e) {
+                // Parsing and int evaluation never recurse, but the checked, long and big evaluators
+                // still do; report it for this input and keep the session going
+                out.println("Error: expression nested too deeply for " + modeName + " mode");
+            }
+        }
+    }
+
+    /**
+     * @return false if the session should end
+     */
+    private boolean command(String line) {
+        int space = line.indexOf(' ');
+        String name = space < 0 ? line : line.substring(0, space);
+        String args = space < 0 ? "" : line.substring(space + 1).trim();
+
+        switch (name) {
+            case ":ast":
+                showAst = !showAst;
+                out.println("AST printing " + (showAst ? "on" : "off"));
+                break;
+            case ":tokens":
+                showTokens = !showTokens;
+                out.println("Token dump " + (showTokens ? "on" : "off"));
+                break;
+            case ":time":
+                showTimings = !showTimings;
+                out.println("Timings " + (showTimings ? "on" : "off"));
+                break;
+            case ":let":
+                let(args);
+                break;
+            case ":mode":
+                mode(args);
+                break;
+            case ":bench":
+                bench(args);
+                break;
+            case ":metrics":
+                metrics(args);
+                break;
+            case ":help":
+                out.println(":ast | :tokens | :time          toggle AST print, token dump, phase timings");
+                out.println(":let <name> <expr>             bind a variable");
+                out.println(":mode int|checked|long|big     overflow handling (int wraps around)");
+                out.println(":bench <expr> <n>              steady-state throughput of one expression, uncached and cached");
+                out.println(":metrics [on|off|reset]        phase latency histograms, allocations, errors");
+                out.println(":quit                          end the session");
+                break;
+            case ":quit":
+            case ":q":
+                return false;
+            default:
+                out.println("Unknown command: " + name + " (:help for commands)");
+        }
+        return true;
+    }
+
+    /**
+     * Runs one expression through every phase, timing each. Lexing and parsing are skipped when
+     * the AST is cached (the lexer still runs for :tokens).
+     */
+    private void evaluate(String source) {
+        long start = System.nanoTime();
+        Expr ast = cache.getIfPresent(source);
+        boolean cached = ast != null;
+        List<Token> tokens = null;
+        if (!cached || showTokens) {
+            try {
+                tokens = cached ? new Lexer(source).tokenize() : metrics.lex(source);
+            } catch (RuntimeException e) {
+                out.println("Lexical Error: " + e.getMessage());
+                return;
+            }
+        }
+        long lexed = System.nanoTime();
+
+        if (!cached) {
+            try {
+                ast = metrics.parse(tokens);
+            } catch (ParseException e) {
+                out.println("Parse Error: " + e.getMessage());
+                return;
+            }
+            cache.put(source, ast);
+        }
+        long parsed = System.nanoTime();
+
+        String tree = showAst ? metrics.print(printer, ast, PRINT_DEPTH) : null;
+        long printed = System.nanoTime();
+
+        Number result;
+        try {
+            result = metrics.evaluate(evaluator, ast);
+        } catch (RuntimeException e) {
+            out.println("Evaluation Error: " + e.getMessage());
+            return;
+        }
+        long evaluated = System.nanoTime();
+
+        if (showTokens) {
+            out.println("Tokens: " + Lexer.formatTokenList(tokens));
+        }
+        if (tree != null) {
+            out.print(tree);
+        }
+        out.println("Result: " + result);
+        if (showTimings) {
+            out.println((cached ? "lex + parse cached | " : "lex " + (lexed - start) + " ns | parse " + (parsed - lexed) + " ns | ")
+                    + (showAst ? "print " + (printed - parsed) + " ns | " : "")
+                    + "eval " + (evaluated - printed) + " ns");
+        }
+    }
+
+    /**
+     * :metrics [on|off|reset]
+     */
+    private void metrics(String args) {
+        switch (args) {
+            case "":
+                out.print(metrics.dump());
+                out.println("AST " + cache);
+                break;
+            case "on":
+                metrics.setEnabled(true);
+                if (!metricsRegistered) {
+                    try {
+                        metrics.register("repl");
+                        metricsRegistered = true;
+                    } catch (JMException e) {
+                        out.println("JMX Error: " + e.getMessage());
+                    }
+                }
+                out.println("Metrics on");
+                break;
+            case "off":
+                metrics.setEnabled(false);
+                out.println("Metrics off");
+                break;
+            case "reset":
+                metrics.reset();
+                out.println("Metrics reset");
+                break;
+            default:
+                out.println("Usage: :metrics [on|off|reset]");
+        }
+    }
+
+    /**
+     * :let <name> <expr>
+     */
+    private void let(String args) {
+        int space = args.indexOf(' ');
+        String name = space < 0 ? args : args.substring(0, space);
+        if (space < 0 || name.isEmpty() || !isIdentifier(name)) {
+            out.println("Usage: :let <name> <expr>");
+            return;
+        }
+        try {
+            Number result = evaluator.apply(cache.get(args.substring(space + 1)));
+            int value = toIntExact(result);     // variables are ints in every mode
+            variables.put(name, value);
+            out.println(name + " = " + value);
+        } catch (ParseException e) {
+            out.println("Parse Error: " + e.getMessage());
+        } catch (RuntimeException e) {
+            out.println("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * :bench <expr> <n>
+     * Runs the expression n times to warm up, then n timed times, for the whole pipeline
+     * (lex + parse + evaluate), for a cache lookup plus evaluation (what entering it again costs)
+     * and for evaluating the already parsed AST.
+     */
+    private void bench(String args) {
+        int space = args.lastIndexOf(' ');
+        int n;
+        try {
+            n = space < 0 ? -1 : Integer.parseInt(args.substring(space + 1));
+        } catch (NumberFormatException e) {
+            n = -1;
+        }
+        if (n <= 0) {
+            out.println("Usage: :bench <expr> <n>");
+            return;
+        }
+        String source = args.substring(0, space).trim();
+
+        // Run it once first, so errors are reported instead of timed
+        Expr ast;
+        try {
+            ast = cache.get(source);
+            sink += evaluator.apply(ast).intValue();
+        } catch (ParseException e) {
+            out.println("Parse Error: " + e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            out.println("Error: " + e.getMessage());
+            return;
+        }
+
+        try {
+            pipeline(source, n);
+            long pipelineTime = pipeline(source, n);
+            cached(source, n);
+            long cachedTime = cached(source, n);
+            evaluate(ast, n);
+            long evaluateTime = evaluate(ast, n);
+            out.println("pipeline  " + rate(pipelineTime, n));
+            out.println("cached    " + rate(cachedTime, n));
+            out.println("evaluate  " + rate(evaluateTime, n));
+        } catch (ParseException e) {
+            out.println("Parse Error: " + e.getMessage());  // already parsed once, cannot happen
+        }
+    }
+
+    /**
+     * @return nanoseconds taken by n runs of lex + parse + evaluate
+     */
+    private long pipeline(String source, int n) throws ParseException {
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            sink += evaluator.apply(new IterativeParser(new Lexer(source)).parse()).intValue();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return nanoseconds taken by n runs of cache lookup + evaluate
+     */
+    private long cached(String source, int n) throws ParseException {
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            sink += evaluator.apply(cache.get(source)).intValue();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return nanoseconds taken by n evaluations of ast
+     */
+    private long evaluate(Expr ast, int n) {
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            sink += evaluator.apply(ast).intValue();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * :mode int|checked|long|big
+     */
+    private void mode(String args) {
+        switch (args) {
+            case "int":
+                mode = NumericMode.INT;
+                break;
+            case "checked":
+                mode = NumericMode.CHECKED_INT;
+                break;
+            case "long":
+                mode = NumericMode.LONG;
+                break;
+            case "big":
+                mode = NumericMode.BIG_INTEGER;
+                break;
+            default:
+                out.println("Usage: :mode int|checked|long|big  (now " + modeName + ")");
+                return;
+        }
+        modeName = args;
+        evaluator = mode.evaluator(variables);
+        out.println("Numeric mode " + modeName);
+    }
+
+    /**
+     * @throws ArithmeticException if the value does not fit in an int
+     */
+    private static int toIntExact(Number value) {
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+        if (value instanceof Long && (Long) value == value.intValue()
+                || value instanceof BigInteger && ((BigInteger) value).bitLength() < Integer.SIZE) {
+            return value.intValue();
+        }
+        throw new ArithmeticException("Variables are ints, " + value + " does not fit");
+    }
+
+    private static String rate(long nanos, int n) {
+        double perOp = (double) nanos / n;
+        return String.format("%,.0f ops/s  (%.1f ns/op)", 1e9 / perOp, perOp);
+    }
+
+    private static boolean isIdentifier(String s) {
+        if (!Character.isLetter(s.charAt(0)) && s.charAt(0) != '_') {
+            return false;
+        }
+        for (int i = 1; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
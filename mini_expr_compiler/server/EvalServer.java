@@ -0,0 +1,320 @@
+package mini_expr_compiler.server;
+
+import mini_expr_compiler.cache.*;
+import mini_expr_compiler.vm.*;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Evaluates expressions for other processes over TCP on localhost, so they pay for JVM startup
+ * and JIT warm-up once instead of once per expression.
+ *
+ * The protocol is the batch format: the client sends one expression per line (\n or \r\n) and
+ * gets one line back per expression, the result or "error line N: message" with N counted per
+ * connection:
+ *
+ *   $ printf '1+2\n8/0\n' | nc localhost 7070
+ *   3
+ *   error line 2: Cannot divide by 0
+ *
+ * A line longer than 1 MB is answered with "error line N: line too long" as soon as that much of
+ * it has arrived, and the rest of it is discarded unread, so no client can make the server buffer
+ * an unbounded line.
+ *
+ * Clients may pipeline: send many lines without waiting for answers. Each connection evaluates
+ * every complete line it has already received as one batch and writes all the answers, in order,
+ * with a single flush, so a pipelined stream costs one read and one write per batch rather than
+ * per expression.
+ *
+ * Expressions are compiled to stack machine Programs and kept in an ExpressionCache shared by all
+ * connections; each connection runs them on its own VirtualMachine. Variables are not supported.
+ *
+ * Every connection gets its own thread: a virtual thread when the JVM has them (Java 21 and later,
+ * looked up by reflection so the code still builds on 17), otherwise a platform thread.
+ */
+public class EvalServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 7070;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_LINE_LENGTH = 1 << 20;    // longer lines are answered with an error and skipped
+
+    private final ServerSocket serverSocket;
+    private final ExpressionCache<Program> cache;
+    private final ThreadFactory threads = connectionThreadFactory();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder connectionCount = new LongAdder();
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Binds to the port on the loopback address. Call start() to accept connections.
+     * @param port   TCP port, 0 for any free port (see getPort())
+     * @param cache  compiled expressions, may be shared with other servers
+     */
+    public EvalServer(int port, ExpressionCache<Program> cache) throws IOException {
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.cache = cache;
+    }
+
+    /**
+     * @return a cache of at most maxEntries expressions compiled for the VirtualMachine
+     */
+    public static ExpressionCache<Program> newCache(int maxEntries) {
+        return new ExpressionCache<>(maxEntries, ast -> new VmCompiler().compile(ast));
+    }
+
+    /**
+     * Accepts connections on a background thread until close()
+     */
+    public void start() {
+        Thread acceptor = new Thread(this::acceptLoop, "eval-server-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return true if connections run on virtual threads
+     */
+    public boolean usesVirtualThreads() {
+        return isVirtual(threads.newThread(() -> { }));
+    }
+
+    public long getConnectionCount() {
+        return connectionCount.sum();
+    }
+
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * @return number of batches answered; requests / batches is the average pipelining depth
+     */
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    public ExpressionCache<Program> getCache() {
+        return cache;
+    }
+
+    /**
+     * Stops accepting and closes all open connections
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : connections) {
+            socket.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Server Error: " + e.getMessage());
+                }
+                return;
+            }
+            connectionCount.increment();
+            connections.add(socket);
+            threads.newThread(() -> serve(socket)).start();
+        }
+    }
+
+    /**
+     * Runs one connection until the client closes it
+     */
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            new Connection(socket.getInputStream(), socket.getOutputStream()).run();
+        } catch (SocketException e) {
+            // Client went away or the server is closing
+        } catch (IOException e) {
+            System.err.println("Connection Error: " + e.getMessage());
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * State of one connection: its read buffer, VM and line counter
+     */
+    private final class Connection {
+        private final InputStream in;
+        private final OutputStream out;
+        private final VirtualMachine vm = new VirtualMachine();
+        private byte[] buffer = new byte[BUFFER_SIZE];
+        private long lineNumber = 0;
+
+        Connection(InputStream in, OutputStream out) {
+            this.in = in;
+            this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+        }
+
+        void run() throws IOException {
+            int start = 0;      // start of the first unanswered line
+            int scanned = 0;    // bytes before this have been searched for a newline
+            int limit = 0;      // end of the bytes read so far
+            boolean skipping = false;   // discarding the rest of a line that was too long
+            while (true) {
+                // Everything complete in the buffer is one batch
+                int lines = 0;
+                int newline;
+                while ((newline = indexOf('\n', scanned, limit)) >= 0) {
+                    if (skipping) {
+                        skipping = false;   // already answered
+                    } else {
+                        answer(start, newline);
+                        lines++;
+                    }
+                    start = newline + 1;
+                    scanned = start;
+                }
+                scanned = limit;
+                if (skipping) {
+                    start = limit;
+                } else if (limit - start > MAX_LINE_LENGTH) {
+                    reply("error line " + (++lineNumber) + ": line too long");
+                    lines++;
+                    skipping = true;
+                    start = limit;
+                }
+                if (lines > 0) {
+                    out.flush();
+                    requestCount.add(lines);
+                    batchCount.increment();
+                }
+
+                // Keep the partial line and read more
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, limit - start);
+                    limit -= start;
+                    scanned -= start;
+                    start = 0;
+                }
+                if (limit == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);  // a single line longer than the buffer, up to MAX_LINE_LENGTH
+                }
+                int n = in.read(buffer, limit, buffer.length - limit);
+                if (n < 0) {
+                    if (limit > 0 && !skipping) {
+                        answer(0, limit);    // last line without a trailing newline
+                        out.flush();
+                        requestCount.increment();
+                        batchCount.increment();
+                    }
+                    return;
+                }
+                limit += n;
+            }
+        }
+
+        private int indexOf(char c, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (buffer[i] == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void answer(int start, int end) throws IOException {
+            lineNumber++;
+            if (end > start && buffer[end - 1] == '\r') {
+                end--;
+            }
+            if (end - start > MAX_LINE_LENGTH) {
+                reply("error line " + lineNumber + ": line too long");
+                return;
+            }
+            String source = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+            String response;
+            try {
+                response = Integer.toString(vm.execute(cache.get(source)));
+            } catch (ParseException | RuntimeException e) {
+                response = "error line " + lineNumber + ": " + e.getMessage();
+            }
+            reply(response);
+        }
+
+        private void reply(String response) throws IOException {
+            out.write(response.getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+        }
+    }
+
+    /**
+     * @return Thread.ofVirtual().name("eval-connection-", 0).factory() if this JVM has virtual threads,
+     *         otherwise a factory for daemon platform threads
+     */
+    private static ThreadFactory connectionThreadFactory() {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "eval-connection-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Before Java 21 (or 19/20 without --enable-preview)
+            AtomicLong counter = new AtomicLong();
+            return task -> {
+                Thread thread = new Thread(task, "eval-connection-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * java mini_expr_compiler.server.EvalServer [port] [cacheEntries]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int cacheEntries = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        EvalServer server = new EvalServer(port, newCache(cacheEntries));
+        server.start();
+        System.err.println("Evaluating on localhost:" + server.getPort()
+                + (server.usesVirtualThreads() ? " (virtual threads)" : " (platform threads)"));
+        Thread.currentThread().join();     // until the process is killed
+    }
+}
@@ -0,0 +1,193 @@
+package mini_expr_compiler.server;
+
+import mini_expr_compiler.metrics.*;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load generator for EvalServer, reporting throughput and latency percentiles.
+ *
+ * Each of 'connections' client threads sends 'depth' expressions at a time (one pipelined batch),
+ * then reads the 'depth' answers, and repeats until the time is up. A request's latency runs from
+ * when its batch was sent to when its answer arrived. The expressions come from a fixed, seeded
+ * pool of 'distinct' random expressions, so after warm-up they are cache hits, like a service
+ * that sees the same formulas over and over.
+ *
+ *   java mini_expr_compiler.server.LoadGenerator [options]
+ *     --port N          server to load, on localhost (default: start one in this JVM)
+ *     --connections N   client connections (default 8)
+ *     --depth N         requests per pipelined batch (default 16)
+ *     --seconds N       measured duration after a warm-up of the same length (default 5)
+ *     --distinct N      size of the expression pool (default 1000)
+ */
+public class LoadGenerator {
+
+    private final int port;
+    private final int connections;
+    private final int depth;
+    private final List<String> pool;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private volatile boolean recording;
+    private volatile boolean running;
+
+    public LoadGenerator(int port, int connections, int depth, List<String> pool) {
+        if (connections < 1 || depth < 1 || pool.isEmpty()) {
+            throw new IllegalArgumentException("connections and depth must be positive, pool not empty");
+        }
+        this.port = port;
+        this.connections = connections;
+        this.depth = depth;
+        this.pool = pool;
+    }
+
+    /**
+     * Runs a warm-up and then a measured phase of the given length, and prints the report
+     */
+    public void run(int seconds) throws InterruptedException {
+        running = true;
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            int id = i;
+            Thread client = new Thread(() -> client(id), "load-client-" + i);
+            client.setDaemon(true);
+            client.start();
+            clients.add(client);
+        }
+
+        Thread.sleep(seconds * 1000L);      // warm-up: JIT, cache misses, connection setup
+        recording = true;
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        recording = false;
+        long elapsed = System.nanoTime() - start;
+        running = false;
+        for (Thread client : clients) {
+            client.join();
+        }
+
+        long requests = latency.getCount();
+        System.out.printf("%d connections, pipelining depth %d, %d distinct expressions%n", connections, depth, pool.size());
+        System.out.printf("requests    %,d in %.1f s (%d errors)%n", requests, elapsed / 1e9, errors.sum());
+        System.out.printf("throughput  %,.0f requests/s%n", requests * 1e9 / elapsed);
+        System.out.printf("latency     p50 %s  p99 %s  max %s%n",
+                micros(latency.getPercentile(50)), micros(latency.getPercentile(99)), micros(latency.getMax()));
+    }
+
+    private void client(int id) {
+        Random random = new Random(id);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+            while (running) {
+                for (int i = 0; i < depth; i++) {
+                    out.write(pool.get(random.nextInt(pool.size())).getBytes(StandardCharsets.UTF_8));
+                    out.write('\n');
+                }
+                long sent = System.nanoTime();
+                out.flush();
+                boolean record = recording;
+                for (int i = 0; i < depth; i++) {
+                    String answer = in.readLine();
+                    if (answer == null) {
+                        throw new IOException("Server closed the connection");
+                    }
+                    if (record) {
+                        latency.record(System.nanoTime() - sent);
+                        if (answer.startsWith("error")) {
+                            errors.increment();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Client Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return count random expressions of up to 'size' operators, the same for the same seed
+     */
+    public static List<String> randomExpressions(int count, int size, long seed) {
+        Random random = new Random(seed);
+        List<String> expressions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(random.nextInt(100));
+            int operators = 1 + random.nextInt(size);
+            for (int j = 0; j < operators; j++) {
+                char op = "+-*/".charAt(random.nextInt(4));
+                sb.append(' ').append(op).append(' ');
+                if (random.nextInt(4) == 0) {
+                    sb.append('(').append(random.nextInt(100)).append(" + ").append(1 + random.nextInt(99)).append(')');
+                } else {
+                    sb.append(op == '/' ? 1 + random.nextInt(99) : random.nextInt(100));
+                }
+            }
+            expressions.add(sb.toString());
+        }
+        return expressions;
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f us", nanos / 1e3);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = -1;
+        int connections = 8;
+        int depth = 16;
+        int seconds = 5;
+        int distinct = 1000;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            int value = Integer.parseInt(args[i + 1]);
+            switch (args[i]) {
+                case "--port":
+                    port = value;
+                    break;
+                case "--connections":
+                    connections = value;
+                    break;
+                case "--depth":
+                    depth = value;
+                    break;
+                case "--seconds":
+                    seconds = value;
+                    break;
+                case "--distinct":
+                    distinct = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        EvalServer server = null;
+        if (port < 0) {
+            server = new EvalServer(0, EvalServer.newCache(Math.max(distinct, 1)));
+            server.start();
+            port = server.getPort();
+            System.out.println("Started a server in this JVM on port " + port
+                    + (server.usesVirtualThreads() ? " (virtual threads)" : " (platform threads)"));
+        }
+        new LoadGenerator(port, connections, depth, randomExpressions(distinct, 8, 42)).run(seconds);
+        if (server != null) {
+            System.out.println("server: " + server.getRequestCount() + " requests in " + server.getBatchCount()
+                    + " batches, " + server.getCache());
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package mini_expr_compiler.vm;
+
+/**
+ * Turns a Program back into a readable listing, one instruction per line:
+ *
+ *   0000  PUSH_CONST 3
+ *   0002  PUSH_CONST 2
+ *   0004  ADD
+ *
+ * The number on the left is the offset of the instruction in the int[] stream.
+ */
+public class Disassembler {
+
+    /**
+     * @param program  the program to list (cannot be null)
+     * @return the listing, each line ending with a newline
+     */
+    public String disassemble(Program program) {
+        int[] code = program.code();
+        StringBuilder sb = new StringBuilder();
+        int pc = 0;
+
+        while (pc < code.length) {
+            int opcode = code[pc];
+            sb.append(String.format("%04d  %s", pc, OpCode.name(opcode)));
+
+            if (opcode == OpCode.PUSH_CONST) {
+                if (pc + 1 < code.length) {
+                    sb.append(' ').append(code[pc + 1]);
+                } else {
+                    sb.append(" <missing operand>");  // truncated program, still list what is there
+                }
+            }
+            sb.append("\n");
+            pc += OpCode.width(opcode);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package mini_expr_compiler.vm;
+
+/**
+ * Instruction set of the stack machine.
+ *
+ * A program is a flat int[]: each instruction is one int holding the opcode,
+ * PUSH_CONST is followed by one more int holding the constant itself.
+ * All other instructions take their operands from the stack.
+ *
+ * These are plain int constants rather than an enum so the VM can switch on them
+ * directly without loading an enum array in the dispatch loop.
+ */
+public final class OpCode {
+
+    public static final int PUSH_CONST = 0;     // push the next int in the program
+    public static final int ADD = 1;            // a b -> a + b
+    public static final int SUB = 2;            // a b -> a - b
+    public static final int MUL = 3;            // a b -> a * b
+    public static final int DIV = 4;            // a b -> a / b, ArithmeticException if b == 0
+    public static final int NEG = 5;            // a -> -a
+
+    private static final String[] NAMES = { "PUSH_CONST", "ADD", "SUB", "MUL", "DIV", "NEG" };
+
+    private OpCode() {
+    }
+
+    /**
+     * @return the mnemonic for an opcode, used by the disassembler and in error messages
+     */
+    public static String name(int opcode) {
+        if (opcode < 0 || opcode >= NAMES.length) {
+            return "UNKNOWN(" + opcode + ")";
+        }
+        return NAMES[opcode];
+    }
+
+    /**
+     * @return how many ints the instruction occupies, including the opcode itself
+     */
+    public static int width(int opcode) {
+        return opcode == PUSH_CONST ? 2 : 1;
+    }
+}
@@ -0,0 +1,47 @@
+package mini_expr_compiler.vm;
+
+import java.util.Arrays;
+
+/**
+ * A compiled stack machine program: the instruction stream plus the
+ * operand stack depth needed to run it.
+ *
+ * Programs are immutable and can be shared between threads; each thread
+ * runs them on its own VirtualMachine.
+ */
+public final class Program {
+
+    private final int[] code;
+    private final int maxStack;
+
+    Program(int[] code, int maxStack) {
+        this.code = code;
+        this.maxStack = maxStack;
+    }
+
+    /**
+     * @return a copy of the instruction stream
+     */
+    public int[] getCode() {
+        return Arrays.copyOf(code, code.length);
+    }
+
+    /**
+     * @return number of ints in the instruction stream
+     */
+    public int getLength() {
+        return code.length;
+    }
+
+    /**
+     * @return the deepest the operand stack gets while running this program
+     */
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    // Direct access for the VM and disassembler, avoids copying on every run
+    int[] code() {
+        return code;
+    }
+}
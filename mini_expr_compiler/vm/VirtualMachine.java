@@ -0,0 +1,78 @@
+package mini_expr_compiler.vm;
+
+/**
+ * Runs stack machine programs produced by VmCompiler.
+ *
+ * The VM is a single loop over the int[] instruction stream with a switch on the opcode.
+ * The operand stack is an int[] owned by the VM and only grows when a program needs
+ * more room than any earlier one, so once it is big enough execute() does not allocate.
+ *
+ * A VirtualMachine is not thread-safe: use one per thread. Programs can be shared.
+ */
+public class VirtualMachine {
+
+    private int[] stack;
+
+    public VirtualMachine() {
+        this(16);
+    }
+
+    /**
+     * @param initialStackSize  operand stack slots to preallocate
+     */
+    public VirtualMachine(int initialStackSize) {
+        this.stack = new int[Math.max(1, initialStackSize)];
+    }
+
+    /**
+     * Runs the program and returns the value left on top of the stack
+     * @param program  compiled program (cannot be null)
+     * @return the computed integer result
+     * @throws ArithmeticException if division by zero is attempted
+     */
+    public int execute(Program program) {
+        if (program.getMaxStack() > stack.length) {
+            stack = new int[program.getMaxStack()];
+        }
+
+        // Copy fields into locals so the loop works on registers only
+        final int[] code = program.code();
+        final int[] s = stack;
+        final int length = code.length;
+        int pc = 0;
+        int sp = 0;     // index of the next free slot
+
+        while (pc < length) {
+            switch (code[pc++]) {
+                case OpCode.PUSH_CONST:
+                    s[sp++] = code[pc++];
+                    break;
+                case OpCode.ADD:
+                    sp--;
+                    s[sp - 1] += s[sp];
+                    break;
+                case OpCode.SUB:
+                    sp--;
+                    s[sp - 1] -= s[sp];
+                    break;
+                case OpCode.MUL:
+                    sp--;
+                    s[sp - 1] *= s[sp];
+                    break;
+                case OpCode.DIV:
+                    sp--;
+                    if (s[sp] == 0) {
+                        throw new ArithmeticException("Cannot divide by 0");
+                    }
+                    s[sp - 1] /= s[sp];
+                    break;
+                case OpCode.NEG:
+                    s[sp - 1] = -s[sp - 1];
+                    break;
+                default:
+                    throw new IllegalStateException("Invalid opcode " + code[pc - 1] + " at " + (pc - 1));
+            }
+        }
+        return s[0];
+    }
+}
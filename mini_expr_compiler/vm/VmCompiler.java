@@ -0,0 +1,138 @@
+package mini_expr_compiler.vm;
+
+import mini_expr_compiler.ast.*;
+
+import java.util.Arrays;
+
+/**
+ * Lowers an Expr tree into a Program for the stack machine.
+ *
+ * The tree is walked post-order, so operands are pushed before the operator
+ * that consumes them:
+ *
+ *   (3 + 2) * 5   becomes   PUSH_CONST 3, PUSH_CONST 2, ADD, PUSH_CONST 5, MUL
+ *
+ * Compiling is a single pass with no class loading, which makes it much cheaper
+ * than BytecodeCompiler while still removing the AST walk from evaluation. The walk
+ * uses an explicit stack, so trees of any depth compile. Programs have no variables.
+ */
+public class VmCompiler {
+
+    private int[] code;
+    private int length;
+    private int depth;
+    private int maxStack;
+
+    // Scratch stack of the post-order walk, kept between compilations
+    private Expr[] pending = new Expr[64];
+    private boolean[] expanded = new boolean[64];
+
+    /**
+     * Compiles the expression into a stack machine program
+     * @param expr  root of the expression tree (cannot be null)
+     * @return the compiled program
+     * @throws ArithmeticException if a literal does not fit in an int
+     * @throws RuntimeException if the expression has a variable (the stack machine has none), an
+     *         unsupported operator is encountered or expr type is unknown
+     */
+    public Program compile(Expr expr) {
+        code = new int[16];
+        length = 0;
+        depth = 0;
+        maxStack = 0;
+
+        emit(expr);
+
+        Program program = new Program(Arrays.copyOf(code, length), maxStack);
+        code = null;    // do not keep the scratch buffer alive between compilations
+        return program;
+    }
+
+    /**
+     * Appends the code of expr, walking the tree with an explicit stack so any depth works
+     */
+    private void emit(Expr root) {
+        int top = 0;
+        pending[top] = root;
+        expanded[top++] = false;
+
+        try {
+            while (top > 0) {
+                Expr expr = pending[--top];
+                boolean childrenDone = expanded[top];
+                pending[top] = null;
+                if (top + 3 > pending.length) {
+                    pending = Arrays.copyOf(pending, pending.length * 2);
+                    expanded = Arrays.copyOf(expanded, expanded.length * 2);
+                }
+
+                if (expr instanceof NumberExpr) {
+                    write(OpCode.PUSH_CONST);
+                    write(((NumberExpr) expr).getValue());
+                    depth++;
+                    if (depth > maxStack) {
+                        maxStack = depth;
+                    }
+                } else if (expr instanceof VariableExpr) {
+                    throw new RuntimeException("Variables are not supported: " + ((VariableExpr) expr).getName());
+                } else if (expr instanceof UnaryExpr) {
+                    UnaryExpr u = (UnaryExpr) expr;
+                    if (!childrenDone) {
+                        pending[top] = expr;
+                        expanded[top++] = true;
+                        pending[top] = u.getRight();
+                        expanded[top++] = false;
+                        continue;
+                    }
+                    switch (u.getOperator().getType()) {
+                        case MINUS:
+                            write(OpCode.NEG);
+                            break;
+                        default:
+                            throw new RuntimeException("Unsupported unary operator: " + u.getOperator().getLexeme());
+                    }
+                } else if (expr instanceof BinaryExpr) {
+                    BinaryExpr b = (BinaryExpr) expr;
+                    if (!childrenDone) {
+                        pending[top] = expr;
+                        expanded[top++] = true;
+                        pending[top] = b.getRight();
+                        expanded[top++] = false;
+                        pending[top] = b.getLeft();     // popped first: left is emitted before right
+                        expanded[top++] = false;
+                        continue;
+                    }
+                    switch (b.getOperator().getType()) {
+                        case PLUS:
+                            write(OpCode.ADD);
+                            break;
+                        case MINUS:
+                            write(OpCode.SUB);
+                            break;
+                        case STAR:
+                            write(OpCode.MUL);
+                            break;
+                        case SLASH:
+                            write(OpCode.DIV);
+                            break;
+                        default:
+                            throw new RuntimeException("Unsupported binary operator: " + b.getOperator().getLexeme());
+                    }
+                    depth--;    // two operands in, one result out
+                } else {
+                    throw new RuntimeException("Unknown expression: " + expr.getClass().getSimpleName());
+                }
+            }
+        } finally {
+            // Do not keep the tree reachable through the reused stack (only left over after an exception)
+            Arrays.fill(pending, 0, top, null);
+        }
+    }
+
+    private void write(int value) {
+        if (length == code.length) {
+            code = Arrays.copyOf(code, length * 2);
+        }
+        code[length++] = value;
+    }
+}